@@ -0,0 +1,20 @@
+package io.github.jeremywildsmith.darkedenkit.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+//Accepts the usual JMH command line, but always attaches the GC profiler so allocation rates are reported alongside throughput.
+public final class BenchmarkRunner
+{
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException
+	{
+		new Runner(new OptionsBuilder()
+						.parent(new CommandLineOptions(args))
+						.addProfiler(GCProfiler.class)
+						.build()).run();
+	}
+}
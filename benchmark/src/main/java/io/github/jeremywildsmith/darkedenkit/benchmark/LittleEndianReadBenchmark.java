@@ -0,0 +1,125 @@
+package io.github.jeremywildsmith.darkedenkit.benchmark;
+
+import io.github.jeremywildsmith.darkedenkit.LittleEndianBufferReader;
+import io.github.jeremywildsmith.darkedenkit.LittleEndianDataInputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+//Each invocation reads an entire 64KB buffer with one primitive type, either through a stream or straight from a heap or direct buffer.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class LittleEndianReadBenchmark
+{
+	private static final int BUFFER_SIZE = 64 * 1024;
+	
+	private byte[] m_source;
+	private ByteBuffer m_directSource;
+	
+	@Setup
+	public void setup()
+	{
+		m_source = new byte[BUFFER_SIZE];
+		new Random(0x5EED).nextBytes(m_source);
+		
+		m_directSource = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		m_directSource.put(m_source);
+		m_directSource.flip();
+	}
+	
+	@Benchmark
+	public long readShort(ThroughputCounters counters) throws IOException
+	{
+		LittleEndianDataInputStream dis = new LittleEndianDataInputStream(new ByteArrayInputStream(m_source));
+		long sum = 0;
+		
+		for(int i = 0; i < BUFFER_SIZE / 2; i++)
+			sum += dis.readShort();
+		
+		counters.decodedBytes += BUFFER_SIZE;
+		return sum;
+	}
+	
+	@Benchmark
+	public long readUnsignedShort(ThroughputCounters counters) throws IOException
+	{
+		LittleEndianDataInputStream dis = new LittleEndianDataInputStream(new ByteArrayInputStream(m_source));
+		long sum = 0;
+		
+		for(int i = 0; i < BUFFER_SIZE / 2; i++)
+			sum += dis.readUnsignedShort();
+		
+		counters.decodedBytes += BUFFER_SIZE;
+		return sum;
+	}
+	
+	@Benchmark
+	public long readUnsignedInt(ThroughputCounters counters) throws IOException
+	{
+		LittleEndianDataInputStream dis = new LittleEndianDataInputStream(new ByteArrayInputStream(m_source));
+		long sum = 0;
+		
+		for(int i = 0; i < BUFFER_SIZE / 4; i++)
+			sum += dis.readUnsignedInt();
+		
+		counters.decodedBytes += BUFFER_SIZE;
+		return sum;
+	}
+	
+	@Benchmark
+	public long bufferReadShort(ThroughputCounters counters) throws IOException
+	{
+		LittleEndianBufferReader reader = new LittleEndianBufferReader(m_source);
+		long sum = 0;
+		
+		for(int i = 0; i < BUFFER_SIZE / 2; i++)
+			sum += reader.readShort();
+		
+		counters.decodedBytes += BUFFER_SIZE;
+		return sum;
+	}
+	
+	@Benchmark
+	public long bufferReadUnsignedInt(ThroughputCounters counters) throws IOException
+	{
+		LittleEndianBufferReader reader = new LittleEndianBufferReader(m_source);
+		long sum = 0;
+		
+		for(int i = 0; i < BUFFER_SIZE / 4; i++)
+			sum += reader.readUnsignedInt();
+		
+		counters.decodedBytes += BUFFER_SIZE;
+		return sum;
+	}
+	
+	@Benchmark
+	public long directBufferReadShort(ThroughputCounters counters) throws IOException
+	{
+		LittleEndianBufferReader reader = new LittleEndianBufferReader(m_directSource);
+		long sum = 0;
+		
+		for(int i = 0; i < BUFFER_SIZE / 2; i++)
+			sum += reader.readShort();
+		
+		counters.decodedBytes += BUFFER_SIZE;
+		return sum;
+	}
+}
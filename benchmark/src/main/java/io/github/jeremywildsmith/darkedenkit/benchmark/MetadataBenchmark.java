@@ -0,0 +1,90 @@
+package io.github.jeremywildsmith.darkedenkit.benchmark;
+
+import io.github.jeremywildsmith.darkedenkit.benchmark.SyntheticSpkCorpus.RunMix;
+import io.github.jeremywildsmith.darkedenkit.benchmark.SyntheticSpkCorpus.SpriteSize;
+import io.github.jeremywildsmith.darkedenkit.dumper.pk.ArtifactTable;
+import io.github.jeremywildsmith.darkedenkit.dumper.pk.CfpkExtractor;
+import io.github.jeremywildsmith.darkedenkit.dumper.pk.PkIndexExtractor;
+import io.github.jeremywildsmith.darkedenkit.dumper.pk.PkIndexExtractor.PkiParseException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class MetadataBenchmark
+{
+	@Param({"1000", "30000"})
+	public int spriteCount;
+	
+	@Param({"100", "1000"})
+	public int artifactCount;
+	
+	private byte[] m_spki;
+	private byte[] m_cfpk;
+	private int[] m_cfpkOffsets;
+	
+	@Setup
+	public void setup()
+	{
+		//Only the offset table is needed here, so keep the sprites themselves tiny.
+		m_spki = SyntheticSpkCorpus.generate(new boolean[] {false, true}, SpriteSize.SMALL, RunMix.NOISY, spriteCount, 0x5EED).getSpki();
+		m_cfpk = SyntheticSpkCorpus.generateCfpk(artifactCount, spriteCount, 0x5EED);
+		
+		try
+		{
+			m_cfpkOffsets = new CfpkExtractor().index(ByteBuffer.wrap(m_cfpk));
+		} catch (IOException e)
+		{
+			throw new IllegalStateException("Generated cfpk could not be indexed.", e);
+		}
+	}
+	
+	@Benchmark
+	public long[] indexExtract(ThroughputCounters counters) throws PkiParseException
+	{
+		counters.compressedBytes += m_spki.length;
+		return new PkIndexExtractor().extract(ByteBuffer.wrap(m_spki));
+	}
+	
+	@Benchmark
+	public ArtifactTable cfpkExtract(ThroughputCounters counters) throws IOException
+	{
+		counters.compressedBytes += m_cfpk.length;
+		return new CfpkExtractor().extract(ByteBuffer.wrap(m_cfpk));
+	}
+	
+	@Benchmark
+	public int[] cfpkIndex(ThroughputCounters counters) throws IOException
+	{
+		counters.compressedBytes += m_cfpk.length;
+		return new CfpkExtractor().index(ByteBuffer.wrap(m_cfpk));
+	}
+	
+	//Loading the last artifact on its own, which without an index costs a parse of the whole document.
+	@Benchmark
+	public ArtifactTable.Artifact cfpkExtractLastArtifact(ThroughputCounters counters) throws IOException
+	{
+		int last = m_cfpkOffsets.length - 2;
+		
+		counters.compressedBytes += m_cfpkOffsets[last + 1] - m_cfpkOffsets[last];
+		return new CfpkExtractor().extractArtifact(ByteBuffer.wrap(m_cfpk), m_cfpkOffsets[last], last);
+	}
+}
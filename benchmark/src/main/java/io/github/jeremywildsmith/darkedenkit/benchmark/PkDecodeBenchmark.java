@@ -0,0 +1,119 @@
+package io.github.jeremywildsmith.darkedenkit.benchmark;
+
+import io.github.jeremywildsmith.darkedenkit.LittleEndianBufferReader;
+import io.github.jeremywildsmith.darkedenkit.benchmark.SyntheticSpkCorpus.RunMix;
+import io.github.jeremywildsmith.darkedenkit.benchmark.SyntheticSpkCorpus.SpriteSize;
+import io.github.jeremywildsmith.darkedenkit.dumper.pk.PkCompressedStream;
+import io.github.jeremywildsmith.darkedenkit.dumper.pk.PkRunDecoder;
+import io.github.jeremywildsmith.darkedenkit.dumper.pk.PkSpriteExtractor;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+//Each invocation decodes the whole synthetic corpus. Per sprite and per byte rates are reported through ThroughputCounters.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class PkDecodeBenchmark
+{
+	private static final byte[] SPRITE_FILL = new byte[] {-1};
+	private static final int SPRITE_COUNT = 64;
+	
+	@Param({"01", "011"})
+	public String copyFillPattern;
+	
+	@Param({"SMALL", "MEDIUM", "LARGE"})
+	public SpriteSize spriteSize;
+	
+	@Param({"OPAQUE", "SPARSE", "NOISY"})
+	public RunMix runMix;
+	
+	private SyntheticSpkCorpus m_corpus;
+	private boolean[] m_copyFillPattern;
+	private PkSpriteExtractor m_extractor;
+	private PkRunDecoder m_runDecoder;
+	private ByteBuffer m_spk;
+	private byte[] m_rowBuffer;
+	
+	@Setup
+	public void setup()
+	{
+		m_copyFillPattern = SyntheticSpkCorpus.parseCopyFillPattern(copyFillPattern);
+		m_corpus = SyntheticSpkCorpus.generate(m_copyFillPattern, spriteSize, runMix, SPRITE_COUNT, 0x5EED);
+		m_extractor = new PkSpriteExtractor(m_copyFillPattern);
+		m_runDecoder = new PkRunDecoder(SPRITE_FILL, m_copyFillPattern);
+		m_spk = ByteBuffer.wrap(m_corpus.getSpk()).asReadOnlyBuffer();
+		m_rowBuffer = new byte[64 * 1024];
+	}
+	
+	private void count(ThroughputCounters counters)
+	{
+		counters.sprites += SPRITE_COUNT;
+		counters.compressedBytes += m_corpus.getCompressedBytes();
+		counters.decodedBytes += m_corpus.getDecodedBytes();
+	}
+	
+	@Benchmark
+	public void compressedStream(ThroughputCounters counters, Blackhole blackhole) throws IOException
+	{
+		byte spk[] = m_corpus.getSpk();
+		
+		for(int i = 0; i < m_corpus.getChunkCount(); i++)
+		{
+			try(PkCompressedStream stream = new PkCompressedStream(SPRITE_FILL, m_copyFillPattern, ByteBuffer.wrap(spk, m_corpus.getChunkOffset(i), m_corpus.getChunkLength(i))))
+			{
+				for(int read; (read = stream.read(m_rowBuffer)) != -1;)
+					blackhole.consume(read);
+			}
+		}
+		
+		count(counters);
+	}
+	
+	@Benchmark
+	public void runDecoder(ThroughputCounters counters, Blackhole blackhole) throws IOException
+	{
+		byte spk[] = m_corpus.getSpk();
+		
+		for(int i = 0; i < m_corpus.getChunkCount(); i++)
+		{
+			LittleEndianBufferReader source = new LittleEndianBufferReader(spk, m_corpus.getChunkOffset(i), m_corpus.getChunkLength(i));
+			blackhole.consume(m_runDecoder.decode(source, m_corpus.getChunkLength(i), m_rowBuffer, 0, m_rowBuffer.length));
+		}
+		
+		count(counters);
+	}
+	
+	@Benchmark
+	public void spriteExtract(ThroughputCounters counters, Blackhole blackhole) throws IOException
+	{
+		for(long origin : m_corpus.getOrigins())
+		{
+			ByteBuffer record = m_spk.duplicate();
+			record.position((int)origin);
+			
+			BufferedImage sprite = m_extractor.extract(record.slice());
+			blackhole.consume(sprite);
+		}
+		
+		count(counters);
+	}
+}
@@ -0,0 +1,266 @@
+package io.github.jeremywildsmith.darkedenkit.benchmark;
+
+import io.github.jeremywildsmith.darkedenkit.LittleEndianDataOutputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+//Generates spk, spki and cfpk documents in memory so that the decoder can be benchmarked without any game data.
+public final class SyntheticSpkCorpus
+{
+	public enum SpriteSize
+	{
+		SMALL(24, 32),
+		MEDIUM(96, 128),
+		LARGE(320, 240);
+		
+		private final int m_width;
+		private final int m_height;
+		
+		private SpriteSize(int width, int height)
+		{
+			m_width = width;
+			m_height = height;
+		}
+	}
+	
+	//Mixes of run lengths. Opaque sprites are mostly long copy runs, sparse sprites are mostly fill and noisy sprites
+	//switch between short copy and fill runs every few pixels.
+	public enum RunMix
+	{
+		OPAQUE(1, 4, 16, 120),
+		SPARSE(12, 60, 1, 8),
+		NOISY(1, 4, 1, 4);
+		
+		private final int m_minFill;
+		private final int m_maxFill;
+		private final int m_minCopy;
+		private final int m_maxCopy;
+		
+		private RunMix(int minFill, int maxFill, int minCopy, int maxCopy)
+		{
+			m_minFill = minFill;
+			m_maxFill = maxFill;
+			m_minCopy = minCopy;
+			m_maxCopy = maxCopy;
+		}
+	}
+	
+	private final byte[] m_spk;
+	private final byte[] m_spki;
+	private final long[] m_origins;
+	private final int[] m_chunkOffsets;
+	private final int[] m_chunkLengths;
+	private final long m_decodedBytes;
+	
+	private SyntheticSpkCorpus(byte[] spk, byte[] spki, long[] origins, int[] chunkOffsets, int[] chunkLengths, long decodedBytes)
+	{
+		m_spk = spk;
+		m_spki = spki;
+		m_origins = origins;
+		m_chunkOffsets = chunkOffsets;
+		m_chunkLengths = chunkLengths;
+		m_decodedBytes = decodedBytes;
+	}
+	
+	private static int nextInRange(Random random, int min, int max)
+	{
+		return min + random.nextInt(max - min + 1);
+	}
+	
+	private static int nextPixel(Random random)
+	{
+		//0xFFFF is the colour key, keep generated copy runs opaque.
+		return random.nextInt(0xFFFF);
+	}
+	
+	private static byte[] generateRow(Random random, boolean[] copyFillPattern, RunMix mix, int width) throws IOException
+	{
+		ByteArrayOutputStream row = new ByteArrayOutputStream();
+		LittleEndianDataOutputStream dos = new LittleEndianDataOutputStream(row);
+		
+		int pixels = 0;
+		int operations = 0;
+		
+		for(; pixels < width; operations++)
+		{
+			boolean isCopy = copyFillPattern[operations % copyFillPattern.length];
+			int length = isCopy ? nextInRange(random, mix.m_minCopy, mix.m_maxCopy) : nextInRange(random, mix.m_minFill, mix.m_maxFill);
+			length = Math.min(length, width - pixels);
+			
+			dos.writeShort(length);
+			
+			if(isCopy)
+			{
+				for(int i = 0; i < length; i++)
+					dos.writeShort(nextPixel(random));
+			}
+			
+			pixels += length;
+		}
+		
+		ByteArrayOutputStream chunk = new ByteArrayOutputStream();
+		LittleEndianDataOutputStream chunkDos = new LittleEndianDataOutputStream(chunk);
+		
+		//Chunk length in words includes the operation count word that precedes the runs.
+		chunkDos.writeShort(row.size() / 2 + 1);
+		chunkDos.writeShort(operations);
+		chunkDos.write(row.toByteArray(), 0, row.size());
+		
+		return chunk.toByteArray();
+	}
+	
+	public static SyntheticSpkCorpus generate(boolean[] copyFillPattern, SpriteSize size, RunMix mix, int spriteCount, long seed)
+	{
+		Random random = new Random(seed);
+		
+		ByteArrayOutputStream spk = new ByteArrayOutputStream();
+		ByteArrayOutputStream spki = new ByteArrayOutputStream();
+		LittleEndianDataOutputStream spkDos = new LittleEndianDataOutputStream(spk);
+		LittleEndianDataOutputStream spkiDos = new LittleEndianDataOutputStream(spki);
+		
+		long origins[] = new long[spriteCount];
+		int chunkOffsets[] = new int[spriteCount * (size.m_height * 5 / 4 + 1)];
+		int chunkLengths[] = new int[chunkOffsets.length];
+		int chunks = 0;
+		long decodedBytes = 0;
+		
+		try
+		{
+			spkDos.writeShort(spriteCount);
+			spkiDos.writeShort(spriteCount);
+			
+			for(int i = 0; i < spriteCount; i++)
+			{
+				//Vary dimensions by up to a quarter around the nominal size.
+				int width = nextInRange(random, size.m_width * 3 / 4, size.m_width * 5 / 4);
+				int height = nextInRange(random, size.m_height * 3 / 4, size.m_height * 5 / 4);
+				
+				origins[i] = spk.size();
+				spkiDos.writeInt((int)origins[i]);
+				
+				spkDos.writeShort(width);
+				spkDos.writeShort(height);
+				
+				for(int y = 0; y < height; y++)
+				{
+					byte row[] = generateRow(random, copyFillPattern, mix, width);
+					
+					//Skip the two header words to point at the runs themselves.
+					chunkOffsets[chunks] = spk.size() + 4;
+					chunkLengths[chunks] = row.length - 4;
+					chunks++;
+					
+					spkDos.write(row, 0, row.length);
+				}
+				
+				decodedBytes += width * height * 2L;
+			}
+		} catch (IOException e)
+		{
+			//Only in memory streams are written to.
+			throw new IllegalStateException(e);
+		}
+		
+		int trimmedOffsets[] = new int[chunks];
+		int trimmedLengths[] = new int[chunks];
+		System.arraycopy(chunkOffsets, 0, trimmedOffsets, 0, chunks);
+		System.arraycopy(chunkLengths, 0, trimmedLengths, 0, chunks);
+		
+		return new SyntheticSpkCorpus(spk.toByteArray(), spki.toByteArray(), origins, trimmedOffsets, trimmedLengths, decodedBytes);
+	}
+	
+	//Artifacts each have a handful of animations with eight perspectives, referring to sprites of an spk with spriteCount entries.
+	public static byte[] generateCfpk(int artifactCount, int spriteCount, long seed)
+	{
+		Random random = new Random(seed);
+		ByteArrayOutputStream cfpk = new ByteArrayOutputStream();
+		LittleEndianDataOutputStream dos = new LittleEndianDataOutputStream(cfpk);
+		
+		try
+		{
+			dos.writeShort(artifactCount);
+			
+			for(int i = 0; i < artifactCount; i++)
+			{
+				int animations = nextInRange(random, 4, 12);
+				dos.writeByte(animations);
+				
+				for(int a = 0; a < animations; a++)
+				{
+					dos.writeByte(8);
+					
+					for(int p = 0; p < 8; p++)
+					{
+						int frames = nextInRange(random, 4, 16);
+						dos.writeShort(frames);
+						
+						for(int f = 0; f < frames; f++)
+						{
+							dos.writeShort(random.nextInt(spriteCount));
+							dos.writeShort(nextInRange(random, -64, 64));
+							dos.writeShort(nextInRange(random, -64, 64));
+						}
+					}
+				}
+			}
+		} catch (IOException e)
+		{
+			throw new IllegalStateException(e);
+		}
+		
+		return cfpk.toByteArray();
+	}
+	
+	public static boolean[] parseCopyFillPattern(String copyFillPattern)
+	{
+		boolean pattern[] = new boolean[copyFillPattern.length()];
+		
+		for(int i = 0; i < copyFillPattern.length(); i++)
+			pattern[i] = copyFillPattern.charAt(i) == '1';
+		
+		return pattern;
+	}
+	
+	public byte[] getSpk()
+	{
+		return m_spk;
+	}
+	
+	public byte[] getSpki()
+	{
+		return m_spki;
+	}
+	
+	public long[] getOrigins()
+	{
+		return m_origins;
+	}
+	
+	public int getChunkCount()
+	{
+		return m_chunkOffsets.length;
+	}
+	
+	public int getChunkOffset(int chunk)
+	{
+		return m_chunkOffsets[chunk];
+	}
+	
+	public int getChunkLength(int chunk)
+	{
+		return m_chunkLengths[chunk];
+	}
+	
+	//Size of all sprites once decompressed to RGB565.
+	public long getDecodedBytes()
+	{
+		return m_decodedBytes;
+	}
+	
+	public long getCompressedBytes()
+	{
+		return m_spk.length;
+	}
+}
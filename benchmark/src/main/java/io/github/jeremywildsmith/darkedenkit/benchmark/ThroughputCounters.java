@@ -0,0 +1,25 @@
+package io.github.jeremywildsmith.darkedenkit.benchmark;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+//Reported by JMH as rates next to the primary result, giving sprites/s and bytes/s for every benchmark that updates them.
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+@State(Scope.Thread)
+public class ThroughputCounters
+{
+	public long sprites;
+	public long compressedBytes;
+	public long decodedBytes;
+	
+	@Setup(Level.Iteration)
+	public void reset()
+	{
+		sprites = 0;
+		compressedBytes = 0;
+		decodedBytes = 0;
+	}
+}
@@ -0,0 +1,76 @@
+package io.github.jeremywildsmith.darkedenkit;
+
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+//Hex encoded SHA-256 digests used to recognise identical sprites. MessageDigest instances are not shared, so these may be called from any thread.
+public final class ContentDigest
+{
+	private static final String ALGORITHM = "SHA-256";
+	private static final int BUFFER_SIZE = 1024 * 8;
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	private static MessageDigest createDigest()
+	{
+		try
+		{
+			return MessageDigest.getInstance(ALGORITHM);
+		} catch (NoSuchAlgorithmException e)
+		{
+			//Every Java platform is required to support SHA-256.
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String toHex(byte[] digest)
+	{
+		char hex[] = new char[digest.length * 2];
+
+		for(int i = 0; i < digest.length; i++)
+		{
+			hex[i * 2] = HEX_DIGITS[(digest[i] >> 4) & 0xF];
+			hex[i * 2 + 1] = HEX_DIGITS[digest[i] & 0xF];
+		}
+
+		return new String(hex);
+	}
+
+	//Digests the remaining bytes of the buffer without moving its position.
+	public static String digest(ByteBuffer data)
+	{
+		MessageDigest digest = createDigest();
+		digest.update(data.duplicate());
+
+		return toHex(digest.digest());
+	}
+
+	//Digests the dimensions and ARGB pixels of the image, so images with the same pixels produce the same digest regardless of how they are stored.
+	public static String digest(BufferedImage image)
+	{
+		MessageDigest digest = createDigest();
+		int width = image.getWidth();
+		int height = image.getHeight();
+
+		ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		buffer.putInt(width).putInt(height);
+
+		int pixels[] = image.getType() == BufferedImage.TYPE_INT_ARGB ? ImageUtils.getArgbData(image) : image.getRGB(0, 0, width, height, null, 0, width);
+
+		for(int i = 0; i < width * height; i++)
+		{
+			if(buffer.remaining() < 4)
+			{
+				digest.update(buffer.array(), 0, buffer.position());
+				buffer.clear();
+			}
+
+			buffer.putInt(pixels[i]);
+		}
+
+		digest.update(buffer.array(), 0, buffer.position());
+
+		return toHex(digest.digest());
+	}
+}
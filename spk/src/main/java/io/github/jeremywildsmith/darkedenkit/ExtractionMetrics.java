@@ -0,0 +1,422 @@
+package io.github.jeremywildsmith.darkedenkit;
+
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+
+//Collects per-stage latency, allocation and throughput figures of an extraction run. Stages are measured by wrapping the stages
+//of a StagedPipeline with the instrumentSource, instrumentStage and instrumentSink methods. While registered, the figures are available through JMX under
+//io.github.jeremywildsmith.darkedenkit:type=ExtractionMetrics.
+public final class ExtractionMetrics implements ExtractionMetricsMBean, Closeable
+{
+	private static final String OBJECT_NAME_FORMAT = "io.github.jeremywildsmith.darkedenkit:type=ExtractionMetrics,name=%s,id=%d";
+	private static final double NANOSECONDS_PER_MILLISECOND = TimeUnit.MILLISECONDS.toNanos(1);
+	private static final double BYTES_PER_MB = 1024.0 * 1024.0;
+
+	private final String m_name;
+	private final String m_itemUnit;
+	private final long m_startTime = System.nanoTime();
+	private volatile long m_endTime = -1;
+
+	//Stages are kept in the order they were instrumented, which is the order they appear in the pipeline.
+	private final List<String> m_stageNames = new ArrayList<>();
+	private final ConcurrentMap<String, StageMetrics> m_stages = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, AtomicLong> m_threadAllocations = new ConcurrentHashMap<>();
+
+	private final AtomicLong m_completedItems = new AtomicLong();
+	private final AtomicLong m_bytesRead = new AtomicLong();
+	private final AtomicLong m_bytesWritten = new AtomicLong();
+
+	@Nullable
+	private final com.sun.management.ThreadMXBean m_threadBean;
+	@Nullable
+	private ObjectName m_registeredName;
+
+	//The item unit names what the run completes, such as sprites or artifacts, and is only used to label figures.
+	public ExtractionMetrics(String name, String itemUnit)
+	{
+		m_name = name;
+		m_itemUnit = itemUnit;
+
+		ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+		if(threadBean instanceof com.sun.management.ThreadMXBean && ((com.sun.management.ThreadMXBean)threadBean).isThreadAllocatedMemorySupported())
+		{
+			com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean)threadBean;
+
+			if(!allocationBean.isThreadAllocatedMemoryEnabled())
+				allocationBean.setThreadAllocatedMemoryEnabled(true);
+
+			m_threadBean = allocationBean;
+		} else
+			m_threadBean = null;
+	}
+
+	//Registers with the platform MBean server. Failing to register only means the figures are not available through JMX.
+	public synchronized void register() throws JMException
+	{
+		if(m_registeredName != null)
+			return;
+
+		ObjectName name = new ObjectName(String.format(OBJECT_NAME_FORMAT, ObjectName.quote(m_name), System.identityHashCode(this)));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+
+		m_registeredName = name;
+	}
+
+	//Marks the end of the run, so rates stop changing, and unregisters from the MBean server.
+	@Override
+	public synchronized void close()
+	{
+		if(m_endTime < 0)
+			m_endTime = System.nanoTime();
+
+		if(m_registeredName != null)
+		{
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+			try
+			{
+				server.unregisterMBean(m_registeredName);
+			} catch (JMException e)
+			{
+				//Already unregistered, nothing left to clean up.
+			}
+
+			m_registeredName = null;
+		}
+	}
+
+	private StageMetrics getStage(String stage)
+	{
+		StageMetrics metrics = m_stages.get(stage);
+
+		if(metrics == null)
+		{
+			StageMetrics created = new StageMetrics();
+			metrics = m_stages.putIfAbsent(stage, created);
+
+			if(metrics == null)
+			{
+				metrics = created;
+
+				synchronized(m_stageNames)
+				{
+					m_stageNames.add(stage);
+				}
+			}
+		}
+
+		return metrics;
+	}
+
+	private long getAllocatedBytes()
+	{
+		return m_threadBean == null ? 0 : m_threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	private void recordThreadAllocation(long allocated)
+	{
+		String thread = Thread.currentThread().getName();
+		AtomicLong total = m_threadAllocations.get(thread);
+
+		if(total == null)
+		{
+			AtomicLong created = new AtomicLong();
+			total = m_threadAllocations.putIfAbsent(thread, created);
+
+			if(total == null)
+				total = created;
+		}
+
+		total.addAndGet(allocated);
+	}
+
+	//Records a single invocation of a stage, for work that does not go through one of the instrumented pipeline stages.
+	public Timer startTimer(String stage)
+	{
+		return new Timer(getStage(stage));
+	}
+
+	public <T> StagedPipeline.Source<T> instrumentSource(String stage, final StagedPipeline.Source<T> source)
+	{
+		final StageMetrics metrics = getStage(stage);
+
+		return new StagedPipeline.Source<T>() {
+			@Override
+			@Nullable
+			public T next()
+			{
+				Timer timer = new Timer(metrics);
+
+				try
+				{
+					return source.next();
+				} finally
+				{
+					timer.stop();
+				}
+			}
+		};
+	}
+
+	public <T> StagedPipeline.Stage<T> instrumentStage(String stage, final StagedPipeline.Stage<T> delegate)
+	{
+		final StageMetrics metrics = getStage(stage);
+
+		return new StagedPipeline.Stage<T>() {
+			@Override
+			public boolean process(T item)
+			{
+				Timer timer = new Timer(metrics);
+
+				try
+				{
+					return delegate.process(item);
+				} finally
+				{
+					timer.stop();
+				}
+			}
+		};
+	}
+
+	//Sinks are timed per batch.
+	public <T> StagedPipeline.Sink<T> instrumentSink(String stage, final StagedPipeline.Sink<T> sink)
+	{
+		final StageMetrics metrics = getStage(stage);
+
+		return new StagedPipeline.Sink<T>() {
+			@Override
+			public void process(List<T> items)
+			{
+				Timer timer = new Timer(metrics);
+
+				try
+				{
+					sink.process(items);
+				} finally
+				{
+					timer.stop();
+				}
+			}
+		};
+	}
+
+	public void addCompletedItems(long items)
+	{
+		m_completedItems.addAndGet(items);
+	}
+
+	public void addBytesRead(long bytes)
+	{
+		m_bytesRead.addAndGet(bytes);
+	}
+
+	public void addBytesWritten(long bytes)
+	{
+		m_bytesWritten.addAndGet(bytes);
+	}
+
+	@Override
+	public String getItemUnit()
+	{
+		return m_itemUnit;
+	}
+
+	@Override
+	public long getCompletedItems()
+	{
+		return m_completedItems.get();
+	}
+
+	@Override
+	public long getBytesRead()
+	{
+		return m_bytesRead.get();
+	}
+
+	@Override
+	public long getBytesWritten()
+	{
+		return m_bytesWritten.get();
+	}
+
+	@Override
+	public long getElapsedMillis()
+	{
+		long end = m_endTime < 0 ? System.nanoTime() : m_endTime;
+
+		return TimeUnit.NANOSECONDS.toMillis(end - m_startTime);
+	}
+
+	private double perSecond(long value)
+	{
+		long elapsed = getElapsedMillis();
+
+		return elapsed <= 0 ? 0 : value * 1000.0 / elapsed;
+	}
+
+	@Override
+	public double getItemsPerSecond()
+	{
+		return perSecond(getCompletedItems());
+	}
+
+	@Override
+	public double getBytesReadPerSecond()
+	{
+		return perSecond(getBytesRead());
+	}
+
+	@Override
+	public double getBytesWrittenPerSecond()
+	{
+		return perSecond(getBytesWritten());
+	}
+
+	@Override
+	public String[] getStageNames()
+	{
+		synchronized(m_stageNames)
+		{
+			return m_stageNames.toArray(new String[m_stageNames.size()]);
+		}
+	}
+
+	private String summarizeStage(String stage)
+	{
+		StageMetrics metrics = m_stages.get(stage);
+		LatencyHistogram latency = metrics.m_latency;
+
+		String summary = String.format("%s: %d calls, mean %.3f ms, p50 %.3f ms, p90 %.3f ms, p99 %.3f ms, max %.3f ms, busy %.1f s",
+				stage, latency.getCount(), latency.getMean() / NANOSECONDS_PER_MILLISECOND,
+				latency.getPercentile(50) / NANOSECONDS_PER_MILLISECOND, latency.getPercentile(90) / NANOSECONDS_PER_MILLISECOND,
+				latency.getPercentile(99) / NANOSECONDS_PER_MILLISECOND, latency.getMax() / NANOSECONDS_PER_MILLISECOND,
+				latency.getTotal() / (NANOSECONDS_PER_MILLISECOND * 1000.0));
+
+		return m_threadBean == null ? summary : String.format("%s, allocated %.1f MB", summary, metrics.m_allocated.get() / BYTES_PER_MB);
+	}
+
+	@Override
+	public String[] getStageSummaries()
+	{
+		String stages[] = getStageNames();
+		String summaries[] = new String[stages.length];
+
+		for(int i = 0; i < stages.length; i++)
+			summaries[i] = summarizeStage(stages[i]);
+
+		return summaries;
+	}
+
+	@Override
+	public String[] getThreadAllocations()
+	{
+		List<String> allocations = new ArrayList<>();
+
+		for(Map.Entry<String, AtomicLong> e : m_threadAllocations.entrySet())
+			allocations.add(String.format("%s: %d bytes", e.getKey(), e.getValue().get()));
+
+		return allocations.toArray(new String[allocations.size()]);
+	}
+
+	private StageMetrics getExistingStage(String stage)
+	{
+		StageMetrics metrics = m_stages.get(stage);
+
+		if(metrics == null)
+			throw new IllegalArgumentException(String.format("No stage named %s has been recorded.", stage));
+
+		return metrics;
+	}
+
+	@Override
+	public long getStageInvocations(String stage)
+	{
+		return getExistingStage(stage).m_latency.getCount();
+	}
+
+	@Override
+	public double getStageMeanMillis(String stage)
+	{
+		return getExistingStage(stage).m_latency.getMean() / NANOSECONDS_PER_MILLISECOND;
+	}
+
+	@Override
+	public double getStagePercentileMillis(String stage, double percentile)
+	{
+		return getExistingStage(stage).m_latency.getPercentile(percentile) / NANOSECONDS_PER_MILLISECOND;
+	}
+
+	@Override
+	public double getStageMaxMillis(String stage)
+	{
+		return getExistingStage(stage).m_latency.getMax() / NANOSECONDS_PER_MILLISECOND;
+	}
+
+	@Override
+	public long getStageAllocatedBytes(String stage)
+	{
+		return m_threadBean == null ? -1 : getExistingStage(stage).m_allocated.get();
+	}
+
+	public void logSummary(Logger logger)
+	{
+		logger.info(String.format("%s: completed %d %s in %.2f s, %.1f %s/s. Read %.1f MB at %.1f MB/s, wrote %.1f MB at %.1f MB/s.",
+				m_name, getCompletedItems(), m_itemUnit, getElapsedMillis() / 1000.0, getItemsPerSecond(), m_itemUnit,
+				getBytesRead() / BYTES_PER_MB, getBytesReadPerSecond() / BYTES_PER_MB,
+				getBytesWritten() / BYTES_PER_MB, getBytesWrittenPerSecond() / BYTES_PER_MB));
+
+		for(String summary : getStageSummaries())
+			logger.info(String.format("%s stage %s", m_name, summary));
+	}
+
+	private static final class StageMetrics
+	{
+		private final LatencyHistogram m_latency = new LatencyHistogram();
+		private final AtomicLong m_allocated = new AtomicLong();
+	}
+
+	//Measures the time and memory allocated by the calling thread between its creation and stop().
+	public final class Timer
+	{
+		private final StageMetrics m_metrics;
+		private final long m_startTime;
+		private final long m_startAllocated;
+
+		private Timer(StageMetrics metrics)
+		{
+			m_metrics = metrics;
+			m_startAllocated = getAllocatedBytes();
+			m_startTime = System.nanoTime();
+		}
+
+		public void stop()
+		{
+			long elapsed = System.nanoTime() - m_startTime;
+			long allocated = getAllocatedBytes() - m_startAllocated;
+
+			m_metrics.m_latency.record(elapsed);
+
+			if(m_threadBean != null)
+			{
+				m_metrics.m_allocated.addAndGet(allocated);
+				recordThreadAllocation(allocated);
+			}
+		}
+	}
+}
@@ -0,0 +1,40 @@
+package io.github.jeremywildsmith.darkedenkit;
+
+//Management interface of ExtractionMetrics. Durations are in milliseconds and allocations in bytes.
+public interface ExtractionMetricsMBean
+{
+	String getItemUnit();
+
+	long getCompletedItems();
+
+	long getBytesRead();
+
+	long getBytesWritten();
+
+	long getElapsedMillis();
+
+	double getItemsPerSecond();
+
+	double getBytesReadPerSecond();
+
+	double getBytesWrittenPerSecond();
+
+	String[] getStageNames();
+
+	//One human readable line per stage, in the same form as the end of run summary.
+	String[] getStageSummaries();
+
+	//One line per thread that has run a stage, with the bytes it allocated while doing so.
+	String[] getThreadAllocations();
+
+	long getStageInvocations(String stage);
+
+	double getStageMeanMillis(String stage);
+
+	double getStagePercentileMillis(String stage, double percentile);
+
+	double getStageMaxMillis(String stage);
+
+	//Returns -1 if the JVM does not support measuring thread allocation.
+	long getStageAllocatedBytes(String stage);
+}
@@ -6,6 +6,7 @@ import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 public final class IOUtils
 {
@@ -52,4 +53,13 @@ public final class IOUtils
 		
 		return totalRead;		
 	}
+	
+	//Reads the rest of the stream into a heap buffer.
+	public static ByteBuffer readFully(InputStream source) throws IOException
+	{
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		copy(source, bos);
+		
+		return ByteBuffer.wrap(bos.toByteArray());
+	}
 }
@@ -0,0 +1,26 @@
+package io.github.jeremywildsmith.darkedenkit;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+
+//An output format for decoded images. Implementations may be shared between threads.
+public interface ImageEncoder
+{
+	//Appended to the name of an image file to name its sidecar.
+	String SIDECAR_SUFFIX = ".json";
+
+	//The name the format is selected by, which is also the extension of the files written in it.
+	String getFormatName();
+
+	//Describes every setting that changes the bytes written, so dump journals written with other settings are discarded.
+	String getConfiguration();
+
+	//The stream is provided by the caller, it is their responsibility to close it.
+	void write(BufferedImage image, OutputStream os) throws IOException;
+
+	//Formats without a header of their own describe the image in a small sidecar file written next to it.
+	//Returns null for formats that need no sidecar.
+	@Nullable
+	byte[] createSidecar(BufferedImage image);
+}
@@ -0,0 +1,37 @@
+package io.github.jeremywildsmith.darkedenkit;
+
+import io.github.jeremywildsmith.darkedenkit.RawImageEncoder.PixelLayout;
+
+import java.util.Locale;
+
+//The output formats images can be written in, selected by name.
+public final class ImageFormats
+{
+	public static final String DEFAULT_FORMAT = PngEncoder.FORMAT_NAME;
+
+	//For usage messages.
+	public static final String FORMAT_NAMES = "png, qoi, rgba or rgb565";
+
+	private ImageFormats() { }
+
+	//The PNG compression level is only used if the format is png. Returns null if no format has the given name.
+	@Nullable
+	public static ImageEncoder create(String name, int pngCompressionLevel)
+	{
+		String format = name.toLowerCase(Locale.ROOT);
+
+		if(format.equals(PngEncoder.FORMAT_NAME))
+			return new PngEncoder(pngCompressionLevel);
+
+		if(format.equals(QoiEncoder.FORMAT_NAME))
+			return new QoiEncoder();
+
+		for(PixelLayout layout : PixelLayout.values())
+		{
+			if(format.equals(layout.getName()))
+				return new RawImageEncoder(layout);
+		}
+
+		return null;
+	}
+}
@@ -0,0 +1,39 @@
+package io.github.jeremywildsmith.darkedenkit;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+//Works on image rasters directly so that nothing on the extraction path depends on Graphics2D or the AWT Toolkit.
+public final class ImageUtils
+{
+	public static int[] getArgbData(BufferedImage image)
+	{
+		if(image.getType() != BufferedImage.TYPE_INT_ARGB)
+			throw new IllegalArgumentException("Image is not backed by an ARGB integer raster.");
+		
+		return ((DataBufferInt)image.getRaster().getDataBuffer()).getData();
+	}
+	
+	//Replaces the destination region with the source image. Since SPK graphics are either fully opaque or fully transparent,
+	//this gives the same result as drawing the source over a transparent destination.
+	public static void copyArgb(BufferedImage source, BufferedImage destination, int x, int y)
+	{
+		int width = source.getWidth();
+		int height = source.getHeight();
+		
+		if(x < 0 || y < 0 || x + width > destination.getWidth() || y + height > destination.getHeight())
+			throw new IllegalArgumentException("Source image does not fit in the destination at the requested location.");
+		
+		if(source.getType() != BufferedImage.TYPE_INT_ARGB || destination.getType() != BufferedImage.TYPE_INT_ARGB)
+			destination.setRGB(x, y, width, height, source.getRGB(0, 0, width, height, null, 0, width), 0, width);
+		else
+		{
+			int sourceData[] = getArgbData(source);
+			int destinationData[] = getArgbData(destination);
+			int destinationWidth = destination.getWidth();
+			
+			for(int row = 0; row < height; row++)
+				System.arraycopy(sourceData, row * width, destinationData, (y + row) * destinationWidth + x, width);
+		}
+	}
+}
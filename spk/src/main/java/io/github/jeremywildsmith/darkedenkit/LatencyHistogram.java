@@ -0,0 +1,107 @@
+package io.github.jeremywildsmith.darkedenkit;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+//Thread-safe histogram of durations in nanoseconds. Every power of two is split into eight buckets, so reported percentiles
+//are within about 6% of the recorded values while the histogram stays a fixed, small size.
+public final class LatencyHistogram
+{
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+	private final AtomicLongArray m_buckets = new AtomicLongArray(BUCKETS);
+	private final AtomicLong m_count = new AtomicLong();
+	private final AtomicLong m_total = new AtomicLong();
+	private final AtomicLong m_max = new AtomicLong();
+
+	private static int getBucket(long value)
+	{
+		if(value < SUB_BUCKETS)
+			return (int)value;
+
+		int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+		int mantissa = (int)(value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + mantissa;
+	}
+
+	//Midpoint of the values that fall in the bucket.
+	private static long getBucketValue(int bucket)
+	{
+		if(bucket < SUB_BUCKETS)
+			return bucket;
+
+		int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		long lower = (long)(SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+		long width = 1L << (exponent - SUB_BUCKET_BITS);
+
+		return lower + width / 2;
+	}
+
+	public void record(long nanoseconds)
+	{
+		long value = Math.max(0, nanoseconds);
+
+		m_buckets.incrementAndGet(getBucket(value));
+		m_count.incrementAndGet();
+		m_total.addAndGet(value);
+
+		for(long max = m_max.get(); value > max && !m_max.compareAndSet(max, value); max = m_max.get());
+	}
+
+	public long getCount()
+	{
+		return m_count.get();
+	}
+
+	public long getTotal()
+	{
+		return m_total.get();
+	}
+
+	public long getMax()
+	{
+		return m_max.get();
+	}
+
+	public double getMean()
+	{
+		long count = m_count.get();
+
+		return count == 0 ? 0 : (double)m_total.get() / count;
+	}
+
+	//Percentile is in the range [0, 100]. Returns 0 if nothing has been recorded.
+	public long getPercentile(double percentile)
+	{
+		if(percentile < 0 || percentile > 100)
+			throw new IllegalArgumentException("Percentile must be between 0 and 100.");
+
+		long counts[] = new long[BUCKETS];
+		long count = 0;
+
+		for(int i = 0; i < BUCKETS; i++)
+		{
+			counts[i] = m_buckets.get(i);
+			count += counts[i];
+		}
+
+		if(count == 0)
+			return 0;
+
+		long rank = Math.max(1, (long)Math.ceil(percentile / 100.0 * count));
+
+		long seen = 0;
+		for(int i = 0; i < BUCKETS; i++)
+		{
+			seen += counts[i];
+
+			if(seen >= rank)
+				return Math.min(getBucketValue(i), m_max.get());
+		}
+
+		return m_max.get();
+	}
+}
@@ -0,0 +1,142 @@
+package io.github.jeremywildsmith.darkedenkit;
+
+import java.io.EOFException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+//Reads little endian primitives straight out of a heap, direct or mapped buffer. Offers the same reads as LittleEndianDataInputStream,
+//but every read is a single bounds checked load instead of a call to the underlying stream for each byte.
+//
+//Reading starts at the position of the given buffer and ends at its limit. The buffer is duplicated, so reading does not move the
+//caller's position or change its byte order.
+public final class LittleEndianBufferReader
+{
+	private final ByteBuffer m_source;
+
+	public LittleEndianBufferReader(ByteBuffer source)
+	{
+		m_source = source.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	public LittleEndianBufferReader(byte[] source, int offset, int length)
+	{
+		this(ByteBuffer.wrap(source, offset, length));
+	}
+
+	public LittleEndianBufferReader(byte[] source)
+	{
+		this(source, 0, source.length);
+	}
+
+	//Reads the given range of the underlying buffer next, counted from the start of the buffer rather than the position the reader
+	//was created at. Lets a reader over a reused array serve many reads without being recreated.
+	public void setRange(int offset, int length)
+	{
+		m_source.limit(offset + length);
+		m_source.position(offset);
+	}
+
+	//Number of bytes read so far.
+	public int getPosition()
+	{
+		return m_source.position();
+	}
+
+	public int available()
+	{
+		return m_source.remaining();
+	}
+
+	public void readFully(byte b[]) throws EOFException
+	{
+		readFully(b, 0, b.length);
+	}
+
+	public void readFully(byte b[], int off, int len) throws EOFException
+	{
+		if(len < 0)
+			throw new IndexOutOfBoundsException();
+
+		try
+		{
+			m_source.get(b, off, len);
+		} catch (BufferUnderflowException e)
+		{
+			throw new EOFException();
+		}
+	}
+
+	//Like DataInput, skips fewer bytes than requested if the end of the buffer is reached first.
+	public int skipBytes(int n)
+	{
+		int skipped = Math.max(0, Math.min(n, m_source.remaining()));
+		m_source.position(m_source.position() + skipped);
+
+		return skipped;
+	}
+
+	public boolean readBoolean() throws EOFException
+	{
+		return readByte() != 0;
+	}
+
+	public byte readByte() throws EOFException
+	{
+		try
+		{
+			return m_source.get();
+		} catch (BufferUnderflowException e)
+		{
+			throw new EOFException();
+		}
+	}
+
+	public int readUnsignedByte() throws EOFException
+	{
+		return readByte() & 0xFF;
+	}
+
+	public short readShort() throws EOFException
+	{
+		try
+		{
+			return m_source.getShort();
+		} catch (BufferUnderflowException e)
+		{
+			throw new EOFException();
+		}
+	}
+
+	public int readUnsignedShort() throws EOFException
+	{
+		return readShort() & 0xFFFF;
+	}
+
+	public int readInt() throws EOFException
+	{
+		try
+		{
+			return m_source.getInt();
+		} catch (BufferUnderflowException e)
+		{
+			throw new EOFException();
+		}
+	}
+
+	public long readUnsignedInt() throws EOFException
+	{
+		return readInt() & 0xFFFFFFFFL;
+	}
+
+	public long readLong() throws EOFException
+	{
+		try
+		{
+			return m_source.getLong();
+		} catch (BufferUnderflowException e)
+		{
+			throw new EOFException();
+		}
+	}
+}
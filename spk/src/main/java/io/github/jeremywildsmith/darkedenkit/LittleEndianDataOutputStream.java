@@ -96,6 +96,22 @@ public class LittleEndianDataOutputStream extends OutputStream {
 		out.flush();
 	}
 
+	/**
+	 * Closes this data output stream. The underlying output stream is flushed
+	 * and then closed, releasing any system resources associated with it.
+	 *
+	 * @exception IOException
+	 *                if an I/O error occurs.
+	 * @see java.io.FilterOutputStream#close()
+	 */
+	public void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			out.close();
+		}
+	}
+
 	/**
 	 * Writes a <code>boolean</code> to the underlying output stream as a 1-byte
 	 * value. The value <code>true</code> is written out as the value
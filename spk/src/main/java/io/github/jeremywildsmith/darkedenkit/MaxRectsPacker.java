@@ -0,0 +1,249 @@
+package io.github.jeremywildsmith.darkedenkit;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+//Packs rectangles onto as few pages as possible using the MaxRects algorithm with the best short side fit heuristic.
+//Rectangles that do not fit on any open page spill onto a new page. A rectangle larger than the maximum page size is given a page of its own.
+public final class MaxRectsPacker
+{
+	private final int m_maxPageWidth;
+	private final int m_maxPageHeight;
+
+	public MaxRectsPacker(int maxPageWidth, int maxPageHeight)
+	{
+		if(maxPageWidth <= 0 || maxPageHeight <= 0)
+			throw new IllegalArgumentException("Maximum page dimensions must be positive.");
+
+		m_maxPageWidth = maxPageWidth;
+		m_maxPageHeight = maxPageHeight;
+	}
+
+	public int getMaxPageWidth()
+	{
+		return m_maxPageWidth;
+	}
+
+	public int getMaxPageHeight()
+	{
+		return m_maxPageHeight;
+	}
+
+	public Packing pack(final int[] widths, final int[] heights)
+	{
+		if(widths.length != heights.length)
+			throw new IllegalArgumentException("A width and height must be supplied for every rectangle.");
+
+		//Placing large rectangles first leaves the smaller ones to fill in the gaps. Ties are broken by index so the layout is deterministic.
+		Integer order[] = new Integer[widths.length];
+		for(int i = 0; i < order.length; i++)
+			order[i] = i;
+
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b)
+			{
+				int sideA = Math.max(widths[a], heights[a]);
+				int sideB = Math.max(widths[b], heights[b]);
+
+				if(sideA != sideB)
+					return sideA > sideB ? -1 : 1;
+
+				long areaA = (long)widths[a] * heights[a];
+				long areaB = (long)widths[b] * heights[b];
+
+				if(areaA != areaB)
+					return areaA > areaB ? -1 : 1;
+
+				return a.compareTo(b);
+			}
+		});
+
+		List<Page> pages = new ArrayList<>();
+		int placementPages[] = new int[widths.length];
+		Rect2D placements[] = new Rect2D[widths.length];
+
+		for(int i : order)
+		{
+			int width = widths[i];
+			int height = heights[i];
+
+			if(width <= 0 || height <= 0)
+			{
+				placements[i] = new Rect2D();
+				continue;
+			}
+
+			int bestPage = -1;
+			Rect2D bestPlacement = null;
+			long bestShortSide = Long.MAX_VALUE;
+			long bestLongSide = Long.MAX_VALUE;
+
+			for(int p = 0; p < pages.size(); p++)
+			{
+				Page page = pages.get(p);
+
+				for(Rect2D free : page.m_free)
+				{
+					if(free.width < width || free.height < height)
+						continue;
+
+					int leftoverX = free.width - width;
+					int leftoverY = free.height - height;
+					int shortSide = Math.min(leftoverX, leftoverY);
+					int longSide = Math.max(leftoverX, leftoverY);
+
+					if(shortSide < bestShortSide || (shortSide == bestShortSide && longSide < bestLongSide))
+					{
+						bestPage = p;
+						bestPlacement = new Rect2D(free.x, free.y, width, height);
+						bestShortSide = shortSide;
+						bestLongSide = longSide;
+					}
+				}
+			}
+
+			if(bestPlacement == null)
+			{
+				bestPage = pages.size();
+				bestPlacement = new Rect2D(0, 0, width, height);
+				pages.add(new Page(Math.max(width, m_maxPageWidth), Math.max(height, m_maxPageHeight)));
+			}
+
+			pages.get(bestPage).place(bestPlacement);
+			placementPages[i] = bestPage;
+			placements[i] = bestPlacement;
+		}
+
+		int pageWidths[] = new int[pages.size()];
+		int pageHeights[] = new int[pages.size()];
+
+		for(int i = 0; i < pages.size(); i++)
+		{
+			pageWidths[i] = pages.get(i).m_usedWidth;
+			pageHeights[i] = pages.get(i).m_usedHeight;
+		}
+
+		return new Packing(placementPages, placements, pageWidths, pageHeights);
+	}
+
+	private static final class Page
+	{
+		private final List<Rect2D> m_free = new ArrayList<>();
+		private int m_usedWidth = 0;
+		private int m_usedHeight = 0;
+
+		public Page(int width, int height)
+		{
+			m_free.add(new Rect2D(0, 0, width, height));
+		}
+
+		public void place(Rect2D used)
+		{
+			List<Rect2D> split = new ArrayList<>();
+
+			for(int i = 0; i < m_free.size(); )
+			{
+				Rect2D free = m_free.get(i);
+
+				if(!intersects(free, used))
+					i++;
+				else
+				{
+					m_free.remove(i);
+
+					if(used.x > free.x)
+						split.add(new Rect2D(free.x, free.y, used.x - free.x, free.height));
+					if(used.x + used.width < free.x + free.width)
+						split.add(new Rect2D(used.x + used.width, free.y, free.x + free.width - used.x - used.width, free.height));
+					if(used.y > free.y)
+						split.add(new Rect2D(free.x, free.y, free.width, used.y - free.y));
+					if(used.y + used.height < free.y + free.height)
+						split.add(new Rect2D(free.x, used.y + used.height, free.width, free.y + free.height - used.y - used.height));
+				}
+			}
+
+			m_free.addAll(split);
+			pruneContainedFreeRects();
+
+			m_usedWidth = Math.max(m_usedWidth, used.x + used.width);
+			m_usedHeight = Math.max(m_usedHeight, used.y + used.height);
+		}
+
+		private void pruneContainedFreeRects()
+		{
+			for(int i = 0; i < m_free.size(); i++)
+			{
+				for(int j = i + 1; j < m_free.size(); j++)
+				{
+					if(contains(m_free.get(j), m_free.get(i)))
+					{
+						m_free.remove(i);
+						i--;
+						break;
+					}
+
+					if(contains(m_free.get(i), m_free.get(j)))
+					{
+						m_free.remove(j);
+						j--;
+					}
+				}
+			}
+		}
+
+		private static boolean intersects(Rect2D a, Rect2D b)
+		{
+			return a.x < b.x + b.width && b.x < a.x + a.width && a.y < b.y + b.height && b.y < a.y + a.height;
+		}
+
+		private static boolean contains(Rect2D outer, Rect2D inner)
+		{
+			return inner.x >= outer.x && inner.y >= outer.y && inner.x + inner.width <= outer.x + outer.width && inner.y + inner.height <= outer.y + outer.height;
+		}
+	}
+
+	public static final class Packing
+	{
+		private final int[] m_placementPages;
+		private final Rect2D[] m_placements;
+		private final int[] m_pageWidths;
+		private final int[] m_pageHeights;
+
+		private Packing(int[] placementPages, Rect2D[] placements, int[] pageWidths, int[] pageHeights)
+		{
+			m_placementPages = placementPages;
+			m_placements = placements;
+			m_pageWidths = pageWidths;
+			m_pageHeights = pageHeights;
+		}
+
+		public int getPageCount()
+		{
+			return m_pageWidths.length;
+		}
+
+		//Pages are trimmed to the area actually occupied by their rectangles.
+		public int getPageWidth(int page)
+		{
+			return m_pageWidths[page];
+		}
+
+		public int getPageHeight(int page)
+		{
+			return m_pageHeights[page];
+		}
+
+		public int getPage(int index)
+		{
+			return m_placementPages[index];
+		}
+
+		public Rect2D getRegion(int index)
+		{
+			return m_placements[index];
+		}
+	}
+}
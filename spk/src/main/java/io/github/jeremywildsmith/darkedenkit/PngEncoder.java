@@ -0,0 +1,318 @@
+package io.github.jeremywildsmith.darkedenkit;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+//Writes 8-bit RGBA PNGs straight from an image's ARGB raster. Each scanline uses whichever filter gives the smallest sum of
+//absolute filtered values, the usual heuristic recommended by the PNG specification. Instances may be shared between threads.
+public final class PngEncoder implements ImageEncoder
+{
+	public static final String FORMAT_NAME = "png";
+	public static final int DEFAULT_COMPRESSION_LEVEL = 6;
+	
+	private static final byte[] PNG_SIGNATURE = {(byte)0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+	
+	private static final int BYTES_PER_PIXEL = 4;
+	private static final int BIT_DEPTH = 8;
+	private static final int COLOUR_TYPE_RGBA = 6;
+	
+	private static final int FILTER_NONE = 0;
+	private static final int FILTER_SUB = 1;
+	private static final int FILTER_UP = 2;
+	private static final int FILTER_AVERAGE = 3;
+	private static final int FILTER_PAETH = 4;
+	
+	private static final int IDAT_CHUNK_SIZE = 64 * 1024;
+	private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+	
+	private final int m_compressionLevel;
+	
+	public PngEncoder(int compressionLevel)
+	{
+		if(compressionLevel < Deflater.NO_COMPRESSION || compressionLevel > Deflater.BEST_COMPRESSION)
+			throw new IllegalArgumentException("PNG compression level must be between 0 and 9.");
+		
+		m_compressionLevel = compressionLevel;
+	}
+	
+	public PngEncoder()
+	{
+		this(DEFAULT_COMPRESSION_LEVEL);
+	}
+	
+	public int getCompressionLevel()
+	{
+		return m_compressionLevel;
+	}
+	
+	@Override
+	public String getFormatName()
+	{
+		return FORMAT_NAME;
+	}
+	
+	//PNG was the only format before others could be chosen, so it is not named. Journals written before then remain valid.
+	@Override
+	public String getConfiguration()
+	{
+		return String.format("png-level=%d", m_compressionLevel);
+	}
+	
+	@Override
+	@Nullable
+	public byte[] createSidecar(BufferedImage image)
+	{
+		return null;
+	}
+	
+	public void write(BufferedImage image, File destination) throws IOException
+	{
+		try(FileChannel channel = FileChannel.open(destination.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+			OutputStream os = new BufferedOutputStream(Channels.newOutputStream(channel), OUTPUT_BUFFER_SIZE))
+		{
+			write(image, os);
+		}
+	}
+	
+	//The stream is provided by the caller, it is their responsibility to close it.
+	@Override
+	public void write(BufferedImage image, OutputStream os) throws IOException
+	{
+		int width = image.getWidth();
+		int height = image.getHeight();
+		
+		os.write(PNG_SIGNATURE);
+		
+		byte header[] = new byte[13];
+		putInt(header, 0, width);
+		putInt(header, 4, height);
+		header[8] = BIT_DEPTH;
+		header[9] = COLOUR_TYPE_RGBA;
+		//Compression, filter and interlace methods are all zero.
+		writeChunk(os, "IHDR", header, header.length);
+		
+		Deflater deflater = new Deflater(m_compressionLevel);
+		
+		try
+		{
+			IdatOutputStream idat = new IdatOutputStream(os);
+			DeflaterOutputStream compressed = new DeflaterOutputStream(idat, deflater, OUTPUT_BUFFER_SIZE);
+			
+			writeScanlines(image, compressed);
+			
+			compressed.finish();
+			idat.flushChunk();
+		} finally
+		{
+			deflater.end();
+		}
+		
+		writeChunk(os, "IEND", new byte[0], 0);
+		os.flush();
+	}
+	
+	private void writeScanlines(BufferedImage image, OutputStream os) throws IOException
+	{
+		int width = image.getWidth();
+		int height = image.getHeight();
+		int rowBytes = width * BYTES_PER_PIXEL;
+		
+		int argb[] = image.getType() == BufferedImage.TYPE_INT_ARGB ? ImageUtils.getArgbData(image) : null;
+		int rowPixels[] = argb == null ? new int[width] : null;
+		
+		byte previous[] = new byte[rowBytes];
+		byte current[] = new byte[rowBytes];
+		byte best[] = new byte[rowBytes + 1];
+		byte candidate[] = new byte[rowBytes + 1];
+		
+		for(int y = 0; y < height; y++)
+		{
+			int rowOffset = y * width;
+			
+			if(argb == null)
+			{
+				image.getRGB(0, y, width, 1, rowPixels, 0, width);
+				rowOffset = 0;
+			}
+			
+			int source[] = argb == null ? rowPixels : argb;
+			
+			for(int x = 0, i = 0; x < width; x++, i += BYTES_PER_PIXEL)
+			{
+				int pixel = source[rowOffset + x];
+				current[i] = (byte)(pixel >> 16);
+				current[i + 1] = (byte)(pixel >> 8);
+				current[i + 2] = (byte)pixel;
+				current[i + 3] = (byte)(pixel >>> 24);
+			}
+			
+			if(m_compressionLevel == Deflater.NO_COMPRESSION)
+			{
+				best[0] = FILTER_NONE;
+				System.arraycopy(current, 0, best, 1, rowBytes);
+			} else
+			{
+				long bestCost = Long.MAX_VALUE;
+				
+				for(int filter = FILTER_NONE; filter <= FILTER_PAETH; filter++)
+				{
+					long cost = filterRow(filter, current, previous, candidate);
+					
+					if(cost < bestCost)
+					{
+						bestCost = cost;
+						
+						byte swap[] = best;
+						best = candidate;
+						candidate = swap;
+					}
+				}
+			}
+			
+			os.write(best, 0, rowBytes + 1);
+			
+			byte swap[] = previous;
+			previous = current;
+			current = swap;
+		}
+	}
+	
+	//Writes the filtered row, prefixed by its filter type, into out and returns the sum of the absolute filtered values.
+	private static long filterRow(int filter, byte[] row, byte[] previous, byte[] out)
+	{
+		out[0] = (byte)filter;
+		long cost = 0;
+		
+		for(int i = 0; i < row.length; i++)
+		{
+			int x = row[i] & 0xFF;
+			int a = i >= BYTES_PER_PIXEL ? row[i - BYTES_PER_PIXEL] & 0xFF : 0;
+			int b = previous[i] & 0xFF;
+			int c = i >= BYTES_PER_PIXEL ? previous[i - BYTES_PER_PIXEL] & 0xFF : 0;
+			
+			int predictor;
+			switch(filter)
+			{
+				case FILTER_SUB:
+					predictor = a;
+					break;
+				case FILTER_UP:
+					predictor = b;
+					break;
+				case FILTER_AVERAGE:
+					predictor = (a + b) >>> 1;
+					break;
+				case FILTER_PAETH:
+					predictor = paeth(a, b, c);
+					break;
+				default:
+					predictor = 0;
+			}
+			
+			byte filtered = (byte)(x - predictor);
+			out[i + 1] = filtered;
+			cost += Math.abs(filtered);
+		}
+		
+		return cost;
+	}
+	
+	private static int paeth(int a, int b, int c)
+	{
+		int p = a + b - c;
+		int pa = Math.abs(p - a);
+		int pb = Math.abs(p - b);
+		int pc = Math.abs(p - c);
+		
+		if(pa <= pb && pa <= pc)
+			return a;
+		else if(pb <= pc)
+			return b;
+		
+		return c;
+	}
+	
+	private static void putInt(byte[] buffer, int offset, int value)
+	{
+		buffer[offset] = (byte)(value >>> 24);
+		buffer[offset + 1] = (byte)(value >>> 16);
+		buffer[offset + 2] = (byte)(value >>> 8);
+		buffer[offset + 3] = (byte)value;
+	}
+	
+	private static void writeChunk(OutputStream os, String type, byte[] data, int length) throws IOException
+	{
+		byte header[] = new byte[8];
+		putInt(header, 0, length);
+		
+		for(int i = 0; i < 4; i++)
+			header[4 + i] = (byte)type.charAt(i);
+		
+		CRC32 crc = new CRC32();
+		crc.update(header, 4, 4);
+		crc.update(data, 0, length);
+		
+		byte footer[] = new byte[4];
+		putInt(footer, 0, (int)crc.getValue());
+		
+		os.write(header);
+		os.write(data, 0, length);
+		os.write(footer);
+	}
+	
+	//Splits the compressed image data into IDAT chunks.
+	private static final class IdatOutputStream extends OutputStream
+	{
+		private final OutputStream m_destination;
+		private final byte[] m_chunk = new byte[IDAT_CHUNK_SIZE];
+		private int m_chunkLength = 0;
+		
+		public IdatOutputStream(OutputStream destination)
+		{
+			m_destination = destination;
+		}
+		
+		@Override
+		public void write(int b) throws IOException
+		{
+			if(m_chunkLength == m_chunk.length)
+				flushChunk();
+			
+			m_chunk[m_chunkLength++] = (byte)b;
+		}
+		
+		@Override
+		public void write(byte[] buf, int off, int len) throws IOException
+		{
+			while(len > 0)
+			{
+				if(m_chunkLength == m_chunk.length)
+					flushChunk();
+				
+				int copied = Math.min(len, m_chunk.length - m_chunkLength);
+				System.arraycopy(buf, off, m_chunk, m_chunkLength, copied);
+				
+				m_chunkLength += copied;
+				off += copied;
+				len -= copied;
+			}
+		}
+		
+		public void flushChunk() throws IOException
+		{
+			if(m_chunkLength > 0)
+				writeChunk(m_destination, "IDAT", m_chunk, m_chunkLength);
+			
+			m_chunkLength = 0;
+		}
+	}
+}
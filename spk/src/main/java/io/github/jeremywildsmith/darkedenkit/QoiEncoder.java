@@ -0,0 +1,167 @@
+package io.github.jeremywildsmith.darkedenkit;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+
+//Writes images in the Quite OK Image format (https://qoiformat.org/qoi-specification.pdf) straight from their ARGB raster. QOI takes a
+//single pass with no entropy coding, so it encodes many times faster than PNG at a somewhat larger size. Instances may be shared between threads.
+public final class QoiEncoder implements ImageEncoder
+{
+	public static final String FORMAT_NAME = "qoi";
+
+	private static final byte[] QOI_MAGIC = {'q', 'o', 'i', 'f'};
+	private static final byte[] QOI_END_MARKER = {0, 0, 0, 0, 0, 0, 0, 1};
+	private static final int CHANNELS_RGBA = 4;
+	private static final int COLOUR_SPACE_SRGB = 0;
+
+	private static final int OP_INDEX = 0x00;
+	private static final int OP_DIFF = 0x40;
+	private static final int OP_LUMA = 0x80;
+	private static final int OP_RUN = 0xC0;
+	private static final int OP_RGB = 0xFE;
+	private static final int OP_RGBA = 0xFF;
+
+	private static final int INDEX_SIZE = 64;
+	private static final int MAX_RUN = 62;
+
+	private static final int HEADER_LENGTH = 14;
+	//Every pixel written as OP_RGBA.
+	private static final int MAX_BYTES_PER_PIXEL = 5;
+
+	@Override
+	public String getFormatName()
+	{
+		return FORMAT_NAME;
+	}
+
+	@Override
+	public String getConfiguration()
+	{
+		return "format=" + FORMAT_NAME;
+	}
+
+	@Override
+	@Nullable
+	public byte[] createSidecar(BufferedImage image)
+	{
+		return null;
+	}
+
+	private static int putInt(byte[] buffer, int offset, int value)
+	{
+		buffer[offset] = (byte)(value >>> 24);
+		buffer[offset + 1] = (byte)(value >>> 16);
+		buffer[offset + 2] = (byte)(value >>> 8);
+		buffer[offset + 3] = (byte)value;
+
+		return offset + 4;
+	}
+
+	//The pixel hash of the specification, computed from an ARGB pixel.
+	private static int hash(int argb)
+	{
+		int r = (argb >> 16) & 0xFF;
+		int g = (argb >> 8) & 0xFF;
+		int b = argb & 0xFF;
+		int a = argb >>> 24;
+
+		return (r * 3 + g * 5 + b * 7 + a * 11) % INDEX_SIZE;
+	}
+
+	@Override
+	public void write(BufferedImage image, OutputStream os) throws IOException
+	{
+		int width = image.getWidth();
+		int height = image.getHeight();
+
+		int argb[] = image.getType() == BufferedImage.TYPE_INT_ARGB ? ImageUtils.getArgbData(image) : image.getRGB(0, 0, width, height, null, 0, width);
+		int pixels = width * height;
+
+		//Encoded into a single buffer sized for the worst case, so the stream sees one write instead of one per pixel.
+		byte encoded[] = new byte[HEADER_LENGTH + pixels * MAX_BYTES_PER_PIXEL + QOI_END_MARKER.length];
+
+		System.arraycopy(QOI_MAGIC, 0, encoded, 0, QOI_MAGIC.length);
+		int p = putInt(encoded, QOI_MAGIC.length, width);
+		p = putInt(encoded, p, height);
+		encoded[p++] = CHANNELS_RGBA;
+		encoded[p++] = COLOUR_SPACE_SRGB;
+
+		int index[] = new int[INDEX_SIZE];
+		int previous = 0xFF000000;
+		int run = 0;
+
+		for(int i = 0; i < pixels; i++)
+		{
+			int pixel = argb[i];
+
+			if(pixel == previous)
+			{
+				run++;
+
+				if(run == MAX_RUN || i == pixels - 1)
+				{
+					encoded[p++] = (byte)(OP_RUN | (run - 1));
+					run = 0;
+				}
+
+				continue;
+			}
+
+			if(run > 0)
+			{
+				encoded[p++] = (byte)(OP_RUN | (run - 1));
+				run = 0;
+			}
+
+			int slot = hash(pixel);
+
+			if(index[slot] == pixel)
+				encoded[p++] = (byte)(OP_INDEX | slot);
+			else
+			{
+				index[slot] = pixel;
+
+				if((pixel >>> 24) == (previous >>> 24))
+				{
+					//Differences wrap around, as the specification requires.
+					int dr = (byte)(((pixel >> 16) & 0xFF) - ((previous >> 16) & 0xFF));
+					int dg = (byte)(((pixel >> 8) & 0xFF) - ((previous >> 8) & 0xFF));
+					int db = (byte)((pixel & 0xFF) - (previous & 0xFF));
+
+					int drdg = dr - dg;
+					int dbdg = db - dg;
+
+					if(dr >= -2 && dr <= 1 && dg >= -2 && dg <= 1 && db >= -2 && db <= 1)
+						encoded[p++] = (byte)(OP_DIFF | (dr + 2) << 4 | (dg + 2) << 2 | (db + 2));
+					else if(dg >= -32 && dg <= 31 && drdg >= -8 && drdg <= 7 && dbdg >= -8 && dbdg <= 7)
+					{
+						encoded[p++] = (byte)(OP_LUMA | (dg + 32));
+						encoded[p++] = (byte)((drdg + 8) << 4 | (dbdg + 8));
+					} else
+					{
+						encoded[p++] = (byte)OP_RGB;
+						encoded[p++] = (byte)(pixel >> 16);
+						encoded[p++] = (byte)(pixel >> 8);
+						encoded[p++] = (byte)pixel;
+					}
+				} else
+				{
+					encoded[p++] = (byte)OP_RGBA;
+					encoded[p++] = (byte)(pixel >> 16);
+					encoded[p++] = (byte)(pixel >> 8);
+					encoded[p++] = (byte)pixel;
+					encoded[p++] = (byte)(pixel >>> 24);
+				}
+			}
+
+			previous = pixel;
+		}
+
+		System.arraycopy(QOI_END_MARKER, 0, encoded, p, QOI_END_MARKER.length);
+		p += QOI_END_MARKER.length;
+
+		os.write(encoded, 0, p);
+		os.flush();
+	}
+}
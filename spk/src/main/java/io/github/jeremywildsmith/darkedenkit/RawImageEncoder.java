@@ -0,0 +1,125 @@
+package io.github.jeremywildsmith.darkedenkit;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Locale;
+
+//Writes the pixels of an image with no header and no compression, one row after another from the top. What the file holds is described
+//by a sidecar, for example:
+//    {"format": "rgba", "width": 64, "height": 32, "bytesPerPixel": 4, "byteOrder": "little-endian"}
+//Instances may be shared between threads.
+public final class RawImageEncoder implements ImageEncoder
+{
+	private static final Charset SIDECAR_CHARSET = Charset.forName("UTF-8");
+
+	private final PixelLayout m_layout;
+
+	public RawImageEncoder(PixelLayout layout)
+	{
+		m_layout = layout;
+	}
+
+	@Override
+	public String getFormatName()
+	{
+		return m_layout.getName();
+	}
+
+	@Override
+	public String getConfiguration()
+	{
+		return "format=" + m_layout.getName();
+	}
+
+	@Override
+	public byte[] createSidecar(BufferedImage image)
+	{
+		String sidecar = String.format(Locale.ROOT, "{\"format\": \"%s\", \"width\": %d, \"height\": %d, \"bytesPerPixel\": %d, \"byteOrder\": \"little-endian\"}\n",
+										m_layout.getName(), image.getWidth(), image.getHeight(), m_layout.getBytesPerPixel());
+
+		return sidecar.getBytes(SIDECAR_CHARSET);
+	}
+
+	//Pixels are converted a row at a time, so only one row is ever held in the output layout.
+	@Override
+	public void write(BufferedImage image, OutputStream os) throws IOException
+	{
+		int width = image.getWidth();
+		int height = image.getHeight();
+
+		int argb[] = image.getType() == BufferedImage.TYPE_INT_ARGB ? ImageUtils.getArgbData(image) : null;
+		int rowPixels[] = argb == null ? new int[width] : null;
+		byte row[] = new byte[width * m_layout.getBytesPerPixel()];
+
+		for(int y = 0; y < height; y++)
+		{
+			int rowOffset = y * width;
+
+			if(argb == null)
+			{
+				image.getRGB(0, y, width, 1, rowPixels, 0, width);
+				rowOffset = 0;
+			}
+
+			m_layout.convert(argb == null ? rowPixels : argb, rowOffset, width, row);
+			os.write(row);
+		}
+
+		os.flush();
+	}
+
+	public enum PixelLayout
+	{
+		//Red, green, blue and alpha bytes, in that order.
+		RGBA("rgba", 4),
+		//5 bits of red, 6 of green and 5 of blue in a little endian short, red in the highest bits. Alpha is dropped, which loses nothing
+		//besides transparency since SPK graphics have no partially transparent pixels; transparent pixels are written as black.
+		RGB565("rgb565", 2);
+
+		private final String m_name;
+		private final int m_bytesPerPixel;
+
+		private PixelLayout(String name, int bytesPerPixel)
+		{
+			m_name = name;
+			m_bytesPerPixel = bytesPerPixel;
+		}
+
+		public String getName()
+		{
+			return m_name;
+		}
+
+		public int getBytesPerPixel()
+		{
+			return m_bytesPerPixel;
+		}
+
+		private void convert(int[] argb, int offset, int pixels, byte[] destination)
+		{
+			if(this == RGBA)
+			{
+				for(int x = 0, i = 0; x < pixels; x++, i += 4)
+				{
+					int pixel = argb[offset + x];
+					destination[i] = (byte)(pixel >> 16);
+					destination[i + 1] = (byte)(pixel >> 8);
+					destination[i + 2] = (byte)pixel;
+					destination[i + 3] = (byte)(pixel >>> 24);
+				}
+			} else
+			{
+				for(int x = 0, i = 0; x < pixels; x++, i += 2)
+				{
+					int pixel = (argb[offset + x] >>> 24) == 0 ? 0 : argb[offset + x];
+					int rgb565 = ((pixel >> 8) & 0xF800) | ((pixel >> 5) & 0x07E0) | ((pixel >> 3) & 0x001F);
+
+					destination[i] = (byte)rgb565;
+					destination[i + 1] = (byte)(rgb565 >> 8);
+				}
+			}
+		}
+	}
+}
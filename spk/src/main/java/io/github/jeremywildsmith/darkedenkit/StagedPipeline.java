@@ -0,0 +1,271 @@
+package io.github.jeremywildsmith.darkedenkit;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+//Passes work items from a sequential source through a chain of stages, each with its own threads, into a single threaded sink that
+//receives them in batches. Stages are connected by bounded queues, so a slow stage blocks the ones before it instead of letting
+//work pile up on the heap.
+//
+//Stages are expected to deal with failures of individual items themselves. An unchecked exception or error thrown by the source, a stage or the
+//sink stops the pipeline: items still in flight are discarded and run() reports the exception once every thread has finished.
+public final class StagedPipeline<T>
+{
+	//Marks the end of the items in a queue, one is sent for every thread that consumes the queue.
+	private static final Object END_OF_ITEMS = new Object();
+
+	private final int m_queueCapacity;
+	private final List<StageDefinition<T>> m_stages = new ArrayList<>();
+
+	public StagedPipeline(int queueCapacity)
+	{
+		if(queueCapacity <= 0)
+			throw new IllegalArgumentException("Queue capacity must be positive.");
+
+		m_queueCapacity = queueCapacity;
+	}
+
+	public StagedPipeline<T> addStage(String name, int threads, Stage<T> stage)
+	{
+		if(threads <= 0)
+			throw new IllegalArgumentException("Every stage requires at least one thread.");
+
+		m_stages.add(new StageDefinition<T>(name, threads, stage));
+		return this;
+	}
+
+	//Returns once the source is exhausted and every item has been through the sink.
+	public void run(Source<T> source, String sinkName, int batchSize, Sink<T> sink) throws ExecutionException, InterruptedException
+	{
+		if(batchSize <= 0)
+			throw new IllegalArgumentException("Batch size must be positive.");
+
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		List<ExecutorService> pools = new ArrayList<>();
+
+		BlockingQueue<Object> in = new ArrayBlockingQueue<>(m_queueCapacity);
+		BlockingQueue<Object> first = in;
+
+		try
+		{
+			for(int i = 0; i < m_stages.size(); i++)
+			{
+				StageDefinition<T> definition = m_stages.get(i);
+				BlockingQueue<Object> out = new ArrayBlockingQueue<>(m_queueCapacity);
+				int downstreamThreads = i + 1 < m_stages.size() ? m_stages.get(i + 1).m_threads : 1;
+
+				ExecutorService pool = Executors.newFixedThreadPool(definition.m_threads, new StageThreadFactory(definition.m_name));
+				pools.add(pool);
+
+				AtomicInteger running = new AtomicInteger(definition.m_threads);
+				for(int t = 0; t < definition.m_threads; t++)
+					pool.execute(new StageWorker(definition.m_stage, in, out, running, downstreamThreads, failure));
+
+				in = out;
+			}
+
+			ExecutorService sinkPool = Executors.newSingleThreadExecutor(new StageThreadFactory(sinkName));
+			pools.add(sinkPool);
+			sinkPool.execute(new SinkWorker(sink, in, batchSize, failure));
+
+			int firstThreads = m_stages.isEmpty() ? 1 : m_stages.get(0).m_threads;
+
+			try
+			{
+				for(T item = null; failure.get() == null && (item = source.next()) != null; )
+					first.put(item);
+			} catch (RuntimeException | Error e)
+			{
+				failure.compareAndSet(null, e);
+			}
+
+			for(int t = 0; t < firstThreads; t++)
+				first.put(END_OF_ITEMS);
+
+			for(ExecutorService pool : pools)
+			{
+				pool.shutdown();
+				pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+			}
+		} finally
+		{
+			//Only has an effect if we were interrupted, in which case the workers are interrupted out of any queue they are blocked on.
+			for(ExecutorService pool : pools)
+				pool.shutdownNow();
+		}
+
+		if(failure.get() != null)
+			throw new ExecutionException(failure.get());
+	}
+
+	public interface Source<T>
+	{
+		//Returns null once there are no more items.
+		@Nullable
+		T next();
+	}
+
+	public interface Stage<T>
+	{
+		//Returns false if the item should not be passed on to the following stages.
+		boolean process(T item);
+	}
+
+	public interface Sink<T>
+	{
+		void process(List<T> items);
+	}
+
+	private static final class StageDefinition<T>
+	{
+		private final String m_name;
+		private final int m_threads;
+		private final Stage<T> m_stage;
+
+		public StageDefinition(String name, int threads, Stage<T> stage)
+		{
+			m_name = name;
+			m_threads = threads;
+			m_stage = stage;
+		}
+	}
+
+	private static final class StageThreadFactory implements ThreadFactory
+	{
+		private final String m_name;
+		private final AtomicInteger m_count = new AtomicInteger();
+
+		public StageThreadFactory(String name)
+		{
+			m_name = name;
+		}
+
+		@Override
+		public Thread newThread(Runnable r)
+		{
+			return new Thread(r, String.format("%s-%d", m_name, m_count.incrementAndGet()));
+		}
+	}
+
+	private final class StageWorker implements Runnable
+	{
+		private final Stage<T> m_stage;
+		private final BlockingQueue<Object> m_in;
+		private final BlockingQueue<Object> m_out;
+		private final AtomicInteger m_running;
+		private final int m_downstreamThreads;
+		private final AtomicReference<Throwable> m_failure;
+
+		public StageWorker(Stage<T> stage, BlockingQueue<Object> in, BlockingQueue<Object> out, AtomicInteger running, int downstreamThreads, AtomicReference<Throwable> failure)
+		{
+			m_stage = stage;
+			m_in = in;
+			m_out = out;
+			m_running = running;
+			m_downstreamThreads = downstreamThreads;
+			m_failure = failure;
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public void run()
+		{
+			try
+			{
+				for(Object item = m_in.take(); item != END_OF_ITEMS; item = m_in.take())
+				{
+					//After a failure items are still taken so that nothing upstream stays blocked on a full queue.
+					if(m_failure.get() != null)
+						continue;
+
+					try
+					{
+						if(m_stage.process((T)item))
+							m_out.put(item);
+					} catch (RuntimeException | Error e)
+					{
+						m_failure.compareAndSet(null, e);
+					}
+				}
+
+				//The last worker of the stage to finish tells the next stage there is nothing more to come.
+				if(m_running.decrementAndGet() == 0)
+				{
+					for(int i = 0; i < m_downstreamThreads; i++)
+						m_out.put(END_OF_ITEMS);
+				}
+			} catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private final class SinkWorker implements Runnable
+	{
+		private final Sink<T> m_sink;
+		private final BlockingQueue<Object> m_in;
+		private final int m_batchSize;
+		private final AtomicReference<Throwable> m_failure;
+
+		public SinkWorker(Sink<T> sink, BlockingQueue<Object> in, int batchSize, AtomicReference<Throwable> failure)
+		{
+			m_sink = sink;
+			m_in = in;
+			m_batchSize = batchSize;
+			m_failure = failure;
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public void run()
+		{
+			List<Object> taken = new ArrayList<>(m_batchSize);
+			List<T> batch = new ArrayList<>(m_batchSize);
+
+			try
+			{
+				for(boolean ended = false; !ended; )
+				{
+					taken.clear();
+					batch.clear();
+
+					//Block for the first item of a batch, then take whatever else is already waiting.
+					taken.add(m_in.take());
+					m_in.drainTo(taken, m_batchSize - 1);
+
+					for(Object item : taken)
+					{
+						if(item == END_OF_ITEMS)
+							ended = true;
+						else
+							batch.add((T)item);
+					}
+
+					if(batch.isEmpty() || m_failure.get() != null)
+						continue;
+
+					try
+					{
+						m_sink.process(batch);
+					} catch (RuntimeException | Error e)
+					{
+						m_failure.compareAndSet(null, e);
+					}
+				}
+			} catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+}
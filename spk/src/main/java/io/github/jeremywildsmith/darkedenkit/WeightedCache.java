@@ -0,0 +1,152 @@
+package io.github.jeremywildsmith.darkedenkit;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+//Thread-safe least recently used cache bounded by the total weight of its values rather than by their count.
+//Concurrent requests for a key that is not cached yet share a single invocation of the loader.
+public final class WeightedCache<K, V>
+{
+	private final long m_budget;
+	private final Weigher<? super V> m_weigher;
+	
+	//Both maps and m_weight are guarded by this cache's monitor. m_entries is kept in access order.
+	private final LinkedHashMap<K, V> m_entries = new LinkedHashMap<>(16, 0.75F, true);
+	private final Map<K, FutureTask<V>> m_pending = new HashMap<>();
+	private long m_weight = 0;
+	
+	private final AtomicLong m_hits = new AtomicLong();
+	private final AtomicLong m_misses = new AtomicLong();
+	private final AtomicLong m_evictions = new AtomicLong();
+	
+	public WeightedCache(long budget, Weigher<? super V> weigher)
+	{
+		if(budget < 0)
+			throw new IllegalArgumentException("Cache budget must not be negative.");
+		
+		m_budget = budget;
+		m_weigher = weigher;
+	}
+	
+	public V get(K key, Callable<V> loader) throws ExecutionException, InterruptedException
+	{
+		FutureTask<V> load;
+		boolean isLoader = false;
+		
+		synchronized(this)
+		{
+			V cached = m_entries.get(key);
+			
+			if(cached != null)
+			{
+				m_hits.incrementAndGet();
+				return cached;
+			}
+			
+			load = m_pending.get(key);
+			
+			if(load != null)
+				m_hits.incrementAndGet();
+			else
+			{
+				load = new FutureTask<V>(loader);
+				m_pending.put(key, load);
+				isLoader = true;
+				m_misses.incrementAndGet();
+			}
+		}
+		
+		if(isLoader)
+		{
+			load.run();
+			
+			synchronized(this)
+			{
+				m_pending.remove(key);
+				
+				try
+				{
+					store(key, load.get());
+				} catch (ExecutionException e)
+				{
+					//Failed loads are not cached, the next request for the key will try again.
+				}
+			}
+		}
+		
+		return load.get();
+	}
+	
+	//Must be called while holding this cache's monitor.
+	private void store(K key, V value)
+	{
+		if(value == null)
+			return;
+		
+		long weight = m_weigher.weigh(value);
+		
+		if(weight > m_budget)
+			return;
+		
+		V replaced = m_entries.put(key, value);
+		
+		if(replaced != null)
+			m_weight -= m_weigher.weigh(replaced);
+		
+		m_weight += weight;
+		
+		for(Iterator<V> it = m_entries.values().iterator(); m_weight > m_budget && it.hasNext();)
+		{
+			m_weight -= m_weigher.weigh(it.next());
+			it.remove();
+			m_evictions.incrementAndGet();
+		}
+	}
+	
+	public synchronized void clear()
+	{
+		m_entries.clear();
+		m_weight = 0;
+	}
+	
+	public long getBudget()
+	{
+		return m_budget;
+	}
+	
+	public synchronized long getWeight()
+	{
+		return m_weight;
+	}
+	
+	public synchronized int size()
+	{
+		return m_entries.size();
+	}
+	
+	public long getHits()
+	{
+		return m_hits.get();
+	}
+	
+	public long getMisses()
+	{
+		return m_misses.get();
+	}
+	
+	public long getEvictions()
+	{
+		return m_evictions.get();
+	}
+	
+	public interface Weigher<V>
+	{
+		long weigh(V value);
+	}
+}
@@ -1,43 +1,87 @@
 package io.github.jeremywildsmith.darkedenkit.dumper;
 
+import io.github.jeremywildsmith.darkedenkit.ContentDigest;
+import io.github.jeremywildsmith.darkedenkit.ExtractionMetrics;
+import io.github.jeremywildsmith.darkedenkit.ImageEncoder;
+import io.github.jeremywildsmith.darkedenkit.ImageFormats;
+import io.github.jeremywildsmith.darkedenkit.MaxRectsPacker;
 import io.github.jeremywildsmith.darkedenkit.Nullable;
+import io.github.jeremywildsmith.darkedenkit.PngEncoder;
 import io.github.jeremywildsmith.darkedenkit.Rect2D;
+import io.github.jeremywildsmith.darkedenkit.StagedPipeline;
+import io.github.jeremywildsmith.darkedenkit.dumper.CommandLineArguments.InvalidArgumentException;
+import io.github.jeremywildsmith.darkedenkit.dumper.pk.ArtifactTable;
+import io.github.jeremywildsmith.darkedenkit.dumper.pk.ArtifactTable.Artifact;
+import io.github.jeremywildsmith.darkedenkit.dumper.pk.ArtifactTable.ArtifactAnimation;
+import io.github.jeremywildsmith.darkedenkit.dumper.pk.ArtifactTable.ArtifactAnimationPerspective;
+import io.github.jeremywildsmith.darkedenkit.dumper.pk.CfpkArchive;
 import io.github.jeremywildsmith.darkedenkit.dumper.pk.CfpkExtractor;
-import io.github.jeremywildsmith.darkedenkit.dumper.pk.CfpkExtractor.Artifact;
-import io.github.jeremywildsmith.darkedenkit.dumper.pk.CfpkExtractor.ArtifactAnimation;
-import io.github.jeremywildsmith.darkedenkit.dumper.pk.CfpkExtractor.ArtifactAnimationFrame;
-import io.github.jeremywildsmith.darkedenkit.dumper.pk.CfpkExtractor.ArtifactAnimationPerspective;
-import io.github.jeremywildsmith.darkedenkit.dumper.pk.PkIndexExtractor;
 import io.github.jeremywildsmith.darkedenkit.dumper.pk.PkIndexExtractor.PkiParseException;
-import io.github.jeremywildsmith.darkedenkit.dumper.pk.PkSpriteExtractor;
+import io.github.jeremywildsmith.darkedenkit.dumper.pk.PkMetadataCache;
+import io.github.jeremywildsmith.darkedenkit.dumper.pk.SpkArchive;
+import io.github.jeremywildsmith.darkedenkit.dumper.pk.SpkSpriteCache;
 
-import java.awt.Graphics2D;
-import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
-import java.io.RandomAccessFile;
 import java.net.URI;
-import java.nio.channels.Channels;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import javax.imageio.ImageIO;
+import javax.management.JMException;
 
-import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public final class ArtifactAnimationDumper implements Runnable
 {
 	private static final int MILLISECONDS_PER_TIME_FACTOR = 100;
+	private static final int DEFAULT_SPRITE_CACHE_BUDGET_MB = 64;
+	private static final int DEFAULT_MAX_PAGE_SIZE = 2048;
+	
+	//Bounds the animations held between pipeline stages, and so the memory used when one stage falls behind the others.
+	private static final int PIPELINE_QUEUE_CAPACITY = 16;
+	private static final int WRITE_BATCH_SIZE = 8;
+	private static final long BYTES_PER_MB = 1024L * 1024L;
 
-	private static final Map<Integer, String> m_animationNames = new HashMap<>();
+	//Names of the animations by their index within an artifact. Never modified, so it is safe to share between threads and dumpers.
+	private static final Map<Integer, String> ANIMATION_NAMES;
+	
+	static
+	{
+		Map<Integer, String> names = new HashMap<>();
+		
+		names.put(0, "idle");
+		names.put(1, "melee_walk");
+		names.put(2, "melee_attack");
+		names.put(4, "flinch");
+		names.put(5, "drain");
+		names.put(6, "die");
+		names.put(7, "gun_attack");
+		names.put(8, "gun_attackFaster");
+		names.put(9, "gun_attackLargeRecoil");
+		names.put(10, "gun_attackLargeRecoilFaster");
+		names.put(11, "sword_attack");
+		names.put(36, "gun_walk");
+		
+		ANIMATION_NAMES = Collections.unmodifiableMap(names);
+	}
+	
+	//Thread safe and expensive to set up, so one factory creates the generators of every metadata file.
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
 	
 	private static final Logger m_logger = LoggerFactory.getLogger(ArtifactAnimationDumper.class);
 
@@ -45,187 +89,322 @@ public final class ArtifactAnimationDumper implements Runnable
 	private final File m_sourcePkiFile;
 	private final File m_sourceCfpkFile;
 	private final URI m_destinationDirectory;
-	private final PkSpriteExtractor m_extractor;
+	private final boolean[] m_copyFillPattern;
+	private final long m_spriteCacheBudget;
+	private final ImageEncoder m_imageEncoder;
+	private final MaxRectsPacker m_packer;
+	private final boolean m_rebuild;
+	private final int m_workerThreads;
+	@Nullable
+	private final PkMetadataCache m_metadataCache;
+	@Nullable
+	private final IndexSelection m_artifactSelection;
+	@Nullable
+	private final IndexSelection m_animationSelection;
 
-	private ArtifactAnimationDumper(File sourcePkFile, File sourcePkiFile, File sourceCfpkFile, URI destinationDirectory, boolean[] spkCopyFillPattern)
+	//If artifacts or animations are selected, only those are exported, and only the records of the sprites they use are read.
+	private ArtifactAnimationDumper(File sourcePkFile, File sourcePkiFile, File sourceCfpkFile, URI destinationDirectory, boolean[] spkCopyFillPattern, long spriteCacheBudget, ImageEncoder imageEncoder, int maxPageSize, boolean rebuild, int workerThreads, @Nullable PkMetadataCache metadataCache, @Nullable IndexSelection artifactSelection, @Nullable IndexSelection animationSelection)
 	{
 		m_sourcePkFile = sourcePkFile;
 		m_sourcePkiFile = sourcePkiFile;
 		m_sourceCfpkFile = sourceCfpkFile;
 		m_destinationDirectory = destinationDirectory;
 
-		m_extractor = new PkSpriteExtractor(spkCopyFillPattern);
-		
-		m_animationNames.put(0, "idle");
-		m_animationNames.put(1, "melee_walk");
-		m_animationNames.put(2, "melee_attack");
-		m_animationNames.put(4, "flinch");
-		m_animationNames.put(5, "drain");
-		m_animationNames.put(6, "die");
-		m_animationNames.put(7, "gun_attack");
-		m_animationNames.put(8, "gun_attackFaster");
-		m_animationNames.put(9, "gun_attackLargeRecoil");
-		m_animationNames.put(10, "gun_attackLargeRecoilFaster");
-		m_animationNames.put(11, "sword_attack");
-		m_animationNames.put(36, "gun_walk");
+		m_copyFillPattern = spkCopyFillPattern;
+		m_spriteCacheBudget = spriteCacheBudget;
+		m_imageEncoder = imageEncoder;
+		m_packer = new MaxRectsPacker(maxPageSize, maxPageSize);
+		m_rebuild = rebuild;
+		m_workerThreads = workerThreads;
+		m_metadataCache = metadataCache;
+		m_artifactSelection = artifactSelection;
+		m_animationSelection = animationSelection;
+	}
+	
+	static String getAnimationName(int animation)
+	{
+		String name = ANIMATION_NAMES.get(animation);
+		
+		return name == null ? String.valueOf(animation) : name;
+	}
+	
+	//The inverse of getAnimationName. Returns -1 if the name does not belong to any animation.
+	static int getAnimationIndex(String name)
+	{
+		for(Map.Entry<Integer, String> e : ANIMATION_NAMES.entrySet())
+		{
+			if(e.getValue().equals(name))
+				return e.getKey();
+		}
+		
+		try
+		{
+			int animation = Integer.parseInt(name);
+			
+			return animation >= 0 && !ANIMATION_NAMES.containsKey(animation) ? animation : -1;
+		} catch (NumberFormatException e)
+		{
+			return -1;
+		}
 	}
 
-	private void compileJsonShadedGraphicMetadata(File destination, String animation) throws IOException
+	private static String getPageName(int page)
+	{
+		return page == 0 ? "texture" : String.format("texture_%d", page);
+	}
+	
+	private static JsonGenerator createJsonGenerator(File destination) throws IOException
 	{
-		Map<String, Object> objectMapping = new HashMap<>();
+		JsonGenerator generator = JSON_FACTORY.createJsonGenerator(destination, JsonEncoding.UTF8);
+		generator.useDefaultPrettyPrinter();
 		
-		objectMapping.put("texture", String.format("../../texture/%s/texture.png", animation));
+		return generator;
+	}
 	
-		ObjectMapper mapper = new ObjectMapper();
-		mapper.writerWithDefaultPrettyPrinter().writeValue(destination, objectMapping);		
+	private void compileJsonShadedGraphicMetadata(File destination, String animation, int page) throws IOException
+	{
+		try(JsonGenerator generator = createJsonGenerator(destination))
+		{
+			generator.writeStartObject();
+			generator.writeStringField("texture", String.format("../../texture/%s/%s.%s", animation, getPageName(page), m_imageEncoder.getFormatName()));
+			generator.writeEndObject();
+		}
 	}
 	
+	//Fields are written in the order the HashMaps these files used to be serialized from iterated in, so existing files are reproduced exactly.
 	private void compileJsonSpriteMetadata(SpkSpriteSheet spritesheet, ArtifactAnimation artifactAnimation, File destination) throws IOException
 	{
 		final String directions[] = {"sw", "s", "se", "e", "ne", "n", "nw", "w"};
-		ArtifactAnimationPerspective perspectives[] = artifactAnimation.getPerspectives();
-		
-		Map<String, Object> objectMapping = new HashMap<>();
-		List<Map<String, Object>> animations = new ArrayList<>();
-		
-		objectMapping.put("scale", 1.0);
-		objectMapping.put("texture", "texture.sgf");
-		objectMapping.put("defaultAnimation", directions[0]);
-		objectMapping.put("animations", animations);
-		
-		for(int i = 0; i < perspectives.length; i++)
+		try(JsonGenerator generator = createJsonGenerator(destination))
 		{
-			Map<String, Object> animation = new HashMap<>();
-			List<Map<String, Object>> frames = new ArrayList<>();
+			generator.writeStartObject();
+			
+			generator.writeArrayFieldStart("pages");
+			for(int i = 0; i < spritesheet.getPageCount(); i++)
+				generator.writeString(getPageName(i) + ".sgf");
+			generator.writeEndArray();
 			
-			animation.put("name", directions[i]);
-			animation.put("frames", frames);
+			generator.writeStringField("texture", getPageName(0) + ".sgf");
 			
-			animations.add(animation);
-			for(ArtifactAnimationFrame f : perspectives[i].getFrames())
+			generator.writeArrayFieldStart("animations");
+			for(int i = 0; i < artifactAnimation.getPerspectiveCount(); i++)
 			{
-				Rect2D frameRegion = spritesheet.getRegion(f.getSpki());
-				Map<String, Object> frame = new HashMap<>();
-				Map<String, Object> anchor = new HashMap<>();
-				Map<String, Object> region = new HashMap<>();
+				ArtifactAnimationPerspective perspective = artifactAnimation.getPerspective(i);
 				
-				anchor.put("x", -(f.getOriginX() + (frameRegion.width % 2 == 1 ? 1 : 0)) + 27);
-				anchor.put("y", -(f.getOriginY() + (frameRegion.height % 2 == 1 ? 1 : 0)) + 10);
+				generator.writeStartObject();
+				generator.writeArrayFieldStart("frames");
 				
-				region.put("x", frameRegion.x);
-				region.put("y", frameRegion.y);
-				region.put("width", frameRegion.width);
-				region.put("height", frameRegion.height);
-				
-				frame.put("anchor", anchor);
-				frame.put("region", region);
-				frame.put("delay", f.getDurationFactor() * MILLISECONDS_PER_TIME_FACTOR);
+				for(int f = 0; f < perspective.getFrameCount(); f++)
+				{
+					int spki = perspective.getSpki(f);
+					Rect2D frameRegion = spritesheet.getRegion(spki);
+					
+					generator.writeStartObject();
+					generator.writeNumberField("delay", perspective.getDurationFactor(f) * MILLISECONDS_PER_TIME_FACTOR);
+					
+					generator.writeObjectFieldStart("anchor");
+					generator.writeNumberField("x", -(perspective.getOriginX(f) + (frameRegion.width % 2 == 1 ? 1 : 0)) + 27);
+					generator.writeNumberField("y", -(perspective.getOriginY(f) + (frameRegion.height % 2 == 1 ? 1 : 0)) + 10);
+					generator.writeEndObject();
+					
+					generator.writeNumberField("page", spritesheet.getPage(spki));
+					
+					generator.writeObjectFieldStart("region");
+					generator.writeNumberField("x", frameRegion.x);
+					generator.writeNumberField("width", frameRegion.width);
+					generator.writeNumberField("y", frameRegion.y);
+					generator.writeNumberField("height", frameRegion.height);
+					generator.writeEndObject();
+					
+					generator.writeEndObject();
+				}
 				
-				frames.add(frame);
+				generator.writeEndArray();
+				generator.writeStringField("name", directions[i]);
+				generator.writeEndObject();
 			}
+			generator.writeEndArray();
+			
+			generator.writeNumberField("scale", 1.0);
+			generator.writeStringField("defaultAnimation", directions[0]);
+			
+			generator.writeEndObject();
 		}
+	}
+	
+	//Everything besides the source files that affects the files written. Journals written under another configuration are discarded.
+	private String getConfiguration()
+	{
+		StringBuilder pattern = new StringBuilder();
 		
-		ObjectMapper mapper = new ObjectMapper();
-		mapper.writerWithDefaultPrettyPrinter().writeValue(destination, objectMapping);
+		for(boolean copy : m_copyFillPattern)
+			pattern.append(copy ? '1' : '0');
+		
+		return String.format("artifact pattern=%s %s max-page-size=%d", pattern, m_imageEncoder.getConfiguration(), m_packer.getMaxPageWidth());
+	}
+	
+	private boolean isAnimationSelected(int animation)
+	{
+		return m_animationSelection == null || m_animationSelection.contains(animation);
 	}
 	
-	private long[] getSpkIndices()
+	//Digests the artifact's selected animations along with the compressed records of every sprite they use, since those are all its outputs are generated from.
+	//Animations that are not selected only leave a marker, so that exporting other animations is never mistaken for being up to date.
+	//Returns null if one of the records can not be read, in which case the artifact is always exported.
+	@Nullable
+	private String digestArtifact(SpkArchive spk, Artifact artifact, String[] recordDigests, ExtractionMetrics metrics)
 	{
-		long pkIndices[] = new long[0];
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
 		
-		try(FileInputStream spkiFis = new FileInputStream(m_sourcePkiFile))
+		try(DataOutputStream dos = new DataOutputStream(bos))
 		{
-			pkIndices = new PkIndexExtractor().extract(spkiFis);
-		} catch (IOException | PkiParseException e)
+			for(int a = 0; a < artifact.getAnimationCount(); a++)
+			{
+				if(!isAnimationSelected(a))
+				{
+					dos.writeInt(-1);
+					continue;
+				}
+				
+				ArtifactAnimation animation = artifact.getAnimation(a);
+				dos.writeInt(animation.getPerspectiveCount());
+				
+				for(int p = 0; p < animation.getPerspectiveCount(); p++)
+				{
+					ArtifactAnimationPerspective perspective = animation.getPerspective(p);
+					dos.writeInt(perspective.getFrameCount());
+					
+					for(int f = 0; f < perspective.getFrameCount(); f++)
+					{
+						dos.writeInt(perspective.getSpki(f));
+						dos.writeInt(perspective.getOriginX(f));
+						dos.writeInt(perspective.getOriginY(f));
+						dos.writeInt(perspective.getDurationFactor(f));
+					}
+				}
+				
+				for(int spki : animation.getDependentSpki())
+				{
+					if(spki >= recordDigests.length)
+						continue;
+					
+					if(recordDigests[spki] == null)
+					{
+						ByteBuffer record = spk.getRecordBytes(spki);
+						metrics.addBytesRead(record.remaining());
+						recordDigests[spki] = ContentDigest.digest(record);
+					}
+					
+					dos.writeUTF(recordDigests[spki]);
+				}
+			}
+		} catch (IOException e)
 		{
-			m_logger.error("Unable to extract spki indices, assuming no indexes.", e);
+			m_logger.warn("Unable to read the records an artifact depends on, it will always be exported.", e);
+			return null;
 		}
 		
-		return pkIndices;
+		return ContentDigest.digest(ByteBuffer.wrap(bos.toByteArray()));
 	}
 	
-	@Nullable
-	private SpkSpriteSheet compileSpkSpritesheet(RandomAccessFile spk, long[] spki, Set<Integer> includedSpks) throws IOException
+	//Writes the encoded spritesheets and metadata of the animation. Returns the paths, relative to the destination directory, of every file written.
+	private List<String> writeAnimation(AnimationWork animation) throws IOException
 	{
-		Map<Integer, Rect2D> spritesheetFrames = new HashMap<>();
-		List<BufferedImage> frames = new ArrayList<>();
+		String artifactDirectory = String.format("artifact%d/", animation.m_artifact.m_index);
+		URI destinationDirectory = m_destinationDirectory.resolve("./" + artifactDirectory);
+		List<String> outputs = new ArrayList<>();
+		String name = animation.m_name;
 		
-		int maxHeight = 0;
-		int totalWidth = 0;
+		File animationTextureDirectory = new File(destinationDirectory.resolve(String.format("./texture/%s/", name)));
+		File defaultMetadataDirectory = new File(destinationDirectory.resolve(String.format("./default/%s/", name)));
 		
-		for(int i : includedSpks)
+		if((!animationTextureDirectory.exists() && !animationTextureDirectory.mkdirs()) || (!defaultMetadataDirectory.exists() && !defaultMetadataDirectory.mkdirs()))
+			throw new IOException("Unable to create required directories to extract animation to.");
+		
+		for(int page = 0; page < animation.m_spritesheet.getPageCount(); page++)
 		{
-			spk.getChannel().position(spki[i]);
-			BufferedImage frame = m_extractor.extract(Channels.newInputStream(spk.getChannel()));
+			String pageFile = String.format("%s.%s", getPageName(page), m_imageEncoder.getFormatName());
 			
-			if(frame == null)
-				spritesheetFrames.put(i, new Rect2D());
-			else
+			try(FileOutputStream fos = new FileOutputStream(new File(animationTextureDirectory.toURI().resolve("./" + pageFile))))
 			{
-				spritesheetFrames.put(i, new Rect2D(totalWidth, 0, frame.getWidth(), frame.getHeight()));
-				maxHeight = Math.max(maxHeight, frame.getHeight());
-				totalWidth += frame.getWidth();
-
-				frames.add(frame);
+				fos.write(animation.m_encodedPages[page]);
 			}
+			
+			outputs.add(String.format("%stexture/%s/%s", artifactDirectory, name, pageFile));
+			
+			if(animation.m_pageSidecars[page] != null)
+			{
+				try(FileOutputStream fos = new FileOutputStream(new File(animationTextureDirectory.toURI().resolve("./" + pageFile + ImageEncoder.SIDECAR_SUFFIX))))
+				{
+					fos.write(animation.m_pageSidecars[page]);
+				}
+				
+				outputs.add(String.format("%stexture/%s/%s%s", artifactDirectory, name, pageFile, ImageEncoder.SIDECAR_SUFFIX));
+			}
+			
+			String pageName = getPageName(page);
+			compileJsonShadedGraphicMetadata(new File(defaultMetadataDirectory.toURI().resolve(String.format("./%s.sgf", pageName))), name, page);
+			
+			outputs.add(String.format("%sdefault/%s/%s.sgf", artifactDirectory, name, pageName));
 		}
 		
-		if(frames.size() <= 0)
-			return null;
-		
-		BufferedImage spritesheet = new BufferedImage(totalWidth, maxHeight, BufferedImage.TYPE_INT_ARGB);
-		Graphics2D g = (Graphics2D)spritesheet.getGraphics();
-		
-		int offsetX = 0;
-		for(BufferedImage img : frames)
-		{
-			g.drawImage(img, offsetX, 0, null);
-			offsetX += img.getWidth();
-		}
-		g.dispose();
+		compileJsonSpriteMetadata(animation.m_spritesheet, animation.m_animation, new File(defaultMetadataDirectory.toURI().resolve("./animation.jsf")));
+		outputs.add(String.format("%sdefault/%s/animation.jsf", artifactDirectory, name));
 		
-		return new SpkSpriteSheet(spritesheet, spritesheetFrames);
+		return outputs;
 	}
-
-	private void exportArtifact(RandomAccessFile spk, Artifact artifact, long[] spki, URI destinationDirectory) throws IOException
+	
+	//Counts the artifact as processed. Artifacts finish in whatever order their last animation does, so only the count is reported.
+	private void reportProgress(ExportState state)
 	{
-		ArtifactAnimation animations[] = artifact.getAnimations();
-
-		for(int i = 0; i < animations.length; i++)
-		{
-			String name = m_animationNames.containsKey(i) ? m_animationNames.get(i) : String.valueOf(i);
-			
-			File animationTextureDirectory = new File(destinationDirectory.resolve(String.format("./texture/%s/", name)));
-			File defaultMetadataDirectory = new File(destinationDirectory.resolve(String.format("./default/%s/", name)));
-			
-			SpkSpriteSheet spritesheet = compileSpkSpritesheet(spk, spki, animations[i].getDependentSpki());
+		int completed = state.m_completed.incrementAndGet();
+		m_logger.info(String.format("Processed %d of %d artifacts. %.2f%% completed.", completed, state.m_artifacts.size(), (float)completed / state.m_artifacts.size() * 100.0F));
+	}
 	
-			//If the spritesheet is null, then there were no renderable frames in the animation (ie, it was likely culled out of the build. Ignore the animation.
-			if(spritesheet != null)
+	//Called once for every animation of the artifact, whether it was written, had nothing to render or failed. The last call finishes the artifact,
+	//which is only journaled if none of its animations failed.
+	private void finishAnimation(ExportState state, ArtifactWork work)
+	{
+		if(work.m_pendingAnimations.decrementAndGet() == 0)
+			finishArtifact(state, work);
+	}
+	
+	private void finishArtifact(ExportState state, ArtifactWork work)
+	{
+		if(work.m_failed)
+			m_logger.error(String.format("Artifact %d was not completely exported and will be exported again by the next run.", work.m_index));
+		else
+		{
+			try
 			{
-				if((!animationTextureDirectory.exists() && !animationTextureDirectory.mkdirs()) || (!defaultMetadataDirectory.exists() && !defaultMetadataDirectory.mkdirs()))
-					m_logger.error("Unable to create required directories to extract animation to. Not extracting animation.");
-				else
-				{
-					try(FileOutputStream fos = new FileOutputStream(new File(animationTextureDirectory.toURI().resolve("./texture.png"))))
-					{
-						ImageIO.write(spritesheet.getSpritesheet(), "png", fos);
-					}
-					
-					compileJsonShadedGraphicMetadata(new File(defaultMetadataDirectory.toURI().resolve("./texture.sgf")), name);
-					compileJsonSpriteMetadata(spritesheet, animations[i], new File(defaultMetadataDirectory.toURI().resolve("./animation.jsf")));
-				}
+				if(work.m_digest != null)
+					state.m_journal.record(work.m_index, work.m_offset, work.m_digest, null, work.getOutputs());
+				
+				state.m_metrics.addCompletedItems(1);
+			} catch (IOException e)
+			{
+				m_logger.error(String.format("Unable to journal artifact %d. It will be exported again by the next run.", work.m_index), e);
 			}
 		}
+		
+		reportProgress(state);
 	}
 	
-	private void createIndexHtml(int numArtifacts, URI destinationDirectory)
+	//Previews the first page of every artifact's idle animation. Only written for formats a browser can display.
+	private void createIndexHtml(List<StoredArtifact> artifacts, URI destinationDirectory)
 	{
+		if(!m_imageEncoder.getFormatName().equals(PngEncoder.FORMAT_NAME))
+		{
+			m_logger.info(String.format("Not writing an index page, browsers can not display %s images.", m_imageEncoder.getFormatName()));
+			return;
+		}
+		
 		StringBuilder sb = new StringBuilder();
 		sb.append("<html><body>");
-		for(int i = 0; i < numArtifacts; i++)
+		for(StoredArtifact artifact : artifacts)
 		{
-			String source = "artifact" + i + "/texture/idle/texture.png";
+			int i = artifact.m_artifact.getIndex();
+			String source = String.format("artifact%d/texture/%s/%s.%s", i, getAnimationName(0), getPageName(0), m_imageEncoder.getFormatName());
 			sb.append("<b><center>");
 			sb.append(i);
 			sb.append("</b></center><br><img src=\"");
@@ -233,100 +412,528 @@ public final class ArtifactAnimationDumper implements Runnable
 			sb.append("\"/><br>");
 			sb.append("<br>");
 		}
+		sb.append("</body></html>");
 		
-		try(FileOutputStream fos = new FileOutputStream(new File(destinationDirectory.resolve("./index.html"))))
+		try(OutputStreamWriter os = new OutputStreamWriter(new FileOutputStream(new File(destinationDirectory.resolve("./index.html"))), "UTF-8"))
 		{
-			OutputStreamWriter os = new OutputStreamWriter(fos, "UTF-8");
 			os.write(sb.toString());
 		} catch (IOException e)
 		{
 			m_logger.error("Unable to print out index page.", e);
 		}
+	}
+	
+	private boolean export(SpkArchive spk, SpkSpriteCache sprites, List<StoredArtifact> artifacts, DumpJournal journal, ExtractionMetrics metrics)
+	{
+		ExportState state = new ExportState(artifacts, journal, metrics);
+		ArtifactSource source = new ArtifactSource(spk, state);
 		
-		sb.append("</body></html>");
+		StagedPipeline.Source<AnimationWork> instrumentedSource = metrics.instrumentSource("read", source);
+		
+		//Every animation is composed and encoded as a task of its own, so one large artifact does not hold up the others. The sprite cache
+		//and the mapped archive it decodes from are shared by all of them.
+		StagedPipeline<AnimationWork> pipeline = new StagedPipeline<AnimationWork>(PIPELINE_QUEUE_CAPACITY)
+				.addStage("artifact-compose", m_workerThreads, metrics.instrumentStage("compose", new ComposeStage(sprites, state)))
+				.addStage("artifact-encode", m_workerThreads, metrics.instrumentStage("encode", new EncodeStage(state)));
+		
+		try
+		{
+			pipeline.run(instrumentedSource, "artifact-write", WRITE_BATCH_SIZE, metrics.instrumentSink("write", new WriteSink(state)));
+		} catch (ExecutionException e)
+		{
+			m_logger.error("Error encountered extracting artifacts. Terminating extraction operation.", e.getCause());
+			return false;
+		} catch (InterruptedException e)
+		{
+			m_logger.error("Interrupted while waiting for artifacts to be extracted. Terminating extraction operation.", e);
+			Thread.currentThread().interrupt();
+			return false;
+		}
+		
+		if(source.getSkipped() > 0)
+			m_logger.info(String.format("Skipped %d artifacts that were already up to date.", source.getSkipped()));
+		
+		return true;
+	}
+	
+	private ArtifactTable loadArtifactTable() throws IOException
+	{
+		if(m_metadataCache == null)
+			return new CfpkExtractor().extract(ByteBuffer.wrap(Files.readAllBytes(m_sourceCfpkFile.toPath())));
+		
+		ArtifactTable artifacts = m_metadataCache.getArtifacts(m_sourceCfpkFile);
+		m_logger.info(String.format("Metadata cache: %d hits, %d misses.", m_metadataCache.getHits(), m_metadataCache.getMisses()));
+		
+		return artifacts;
+	}
+	
+	//The artifacts to export, in the order they are stored. When artifacts are selected only their offsets are read up front and only the
+	//selected artifacts are parsed.
+	private List<StoredArtifact> loadArtifacts() throws IOException
+	{
+		List<StoredArtifact> artifacts = new ArrayList<>();
+		
+		if(m_artifactSelection == null)
+		{
+			ArtifactTable table = loadArtifactTable();
+			long offset = CfpkExtractor.HEADER_LENGTH;
+			
+			for(int i = 0; i < table.getArtifactCount(); i++)
+			{
+				Artifact artifact = table.getArtifact(i);
+				artifacts.add(new StoredArtifact(artifact, offset));
+				offset += artifact.getEncodedLength();
+			}
+			
+			return artifacts;
+		}
+		
+		try(CfpkArchive cfpk = CfpkArchive.open(m_sourceCfpkFile, m_metadataCache))
+		{
+			if(m_metadataCache != null)
+				m_logger.info(String.format("Metadata cache: %d hits, %d misses.", m_metadataCache.getHits(), m_metadataCache.getMisses()));
+			
+			if(m_artifactSelection.exceeds(cfpk.size()))
+				m_logger.warn(String.format("Some of the selected artifacts %s are not in the cfpk, which only holds %d artifacts. They are ignored.", m_artifactSelection, cfpk.size()));
+			
+			for(int i : m_artifactSelection.toArray(cfpk.size()))
+				artifacts.add(new StoredArtifact(cfpk.getArtifact(i), cfpk.getOffset(i)));
+			
+			m_logger.info(String.format("Selected %d of %d artifacts.", artifacts.size(), cfpk.size()));
+		}
+		
+		return artifacts;
 	}
 	
 	@Override
 	public final void run()
 	{
+		execute();
+	}
+	
+	//Returns false if an error terminated the extraction. Animations that fail on their own are logged and their artifact is exported again
+	//by the next run, without failing the extraction. Holds no state between calls, so a dumper may be run any number of times, also
+	//concurrently with other dumpers.
+	public boolean execute()
+	{
+		boolean completed = false;
+		
 		m_logger.info("Gathering SPK indices...");
-		long pkIndices[] = getSpkIndices();
 		
-		if(pkIndices.length == 0)
-			m_logger.info("No spk graphic indices associated to respective SPK document. There is nothing to extract.");
-		else
+		try(SpkArchive spk = SpkArchive.open(m_sourcePkFile, m_sourcePkiFile, m_copyFillPattern, m_metadataCache))
 		{
-			try(RandomAccessFile spk = new RandomAccessFile(m_sourcePkFile, "r");
-				FileInputStream cfpk = new FileInputStream(m_sourceCfpkFile))
+			if(spk.size() == 0)
 			{
-				m_logger.info("Gathering artifact meta-data...");
-				Artifact[] artifacts = new CfpkExtractor().extract(cfpk);
-				createIndexHtml(artifacts.length, m_destinationDirectory);
-				
-				for(int i = 0; i < artifacts.length; i++)
+				m_logger.info("No spk graphic indices associated to respective SPK document. There is nothing to extract.");
+				completed = true;
+			} else
+			{
+				try(DumpJournal journal = DumpJournal.open(m_destinationDirectory, getConfiguration(), m_rebuild))
 				{
-					exportArtifact(spk, artifacts[i], pkIndices, m_destinationDirectory.resolve(String.format("./artifact%d/", i)));
-					m_logger.info(String.format("Processed %d of %d artifacts. %.2f%% completed.", i + 1, artifacts.length, (i + 1.0F) / artifacts.length * 100.0F));
+					//Creatures share many of their frames, so decoded sprites are reused across animations and artifacts.
+					SpkSpriteCache sprites = new SpkSpriteCache(spk, m_spriteCacheBudget);
+					
+					m_logger.info("Gathering artifact meta-data...");
+					List<StoredArtifact> artifacts = loadArtifacts();
+					createIndexHtml(artifacts, m_destinationDirectory);
+					
+					ExtractionMetrics metrics = new ExtractionMetrics(ArtifactAnimationDumper.class.getSimpleName(), "artifacts");
+					
+					try
+					{
+						try
+						{
+							metrics.register();
+						} catch (JMException e)
+						{
+							m_logger.warn("Unable to register extraction metrics with JMX, they will only be logged once the extraction completes.", e);
+						}
+						
+						completed = export(spk, sprites, artifacts, journal, metrics);
+					} finally
+					{
+						metrics.close();
+					}
+					
+					metrics.logSummary(m_logger);
+					
+					m_logger.info(String.format("Sprite cache: %d hits, %d misses, %d evictions, %d of %d bytes in use.",
+									sprites.getHits(), sprites.getMisses(), sprites.getEvictions(), sprites.getWeight(), sprites.getBudget()));
 				}
-			} catch (IOException e)
-			{
-				m_logger.error("Error encountered extracting artifacts. Terminating extraction operation.", e);
 			}
+		} catch (PkiParseException e)
+		{
+			m_logger.error("Unable to extract spki indices, assuming no indexes.", e);
+			m_logger.info("No spk graphic indices associated to respective SPK document. There is nothing to extract.");
+		} catch (IOException e)
+		{
+			m_logger.error("Error encountered extracting artifacts. Terminating extraction operation.", e);
 		}
 		
 		m_logger.info("Done");
+		
+		return completed;
+	}
+	
+	//An artifact to export along with its offset in the cfpk.
+	private static final class StoredArtifact
+	{
+		private final Artifact m_artifact;
+		private final long m_offset;
+		
+		public StoredArtifact(Artifact artifact, long offset)
+		{
+			m_artifact = artifact;
+			m_offset = offset;
+		}
+	}
+	
+	//State shared by the stages of a single export.
+	private static final class ExportState
+	{
+		private final List<StoredArtifact> m_artifacts;
+		private final DumpJournal m_journal;
+		private final ExtractionMetrics m_metrics;
+		private final AtomicInteger m_completed = new AtomicInteger();
+		
+		public ExportState(List<StoredArtifact> artifacts, DumpJournal journal, ExtractionMetrics metrics)
+		{
+			m_artifacts = artifacts;
+			m_journal = journal;
+			m_metrics = metrics;
+		}
 	}
 	
-	private static final class SpkSpriteSheet
+	//An artifact whose animations are on their way through the pipeline.
+	private static final class ArtifactWork
 	{
-		private final BufferedImage m_spritesheet;
-		private final Map<Integer, Rect2D> m_spkiMapping;
+		private final int m_index;
+		private final long m_offset;
+		@Nullable
+		private final String m_digest;
+		private final Artifact m_artifact;
+		private final AtomicInteger m_pendingAnimations;
+		private final List<String> m_outputs = new ArrayList<>();
+		private volatile boolean m_failed = false;
 		
-		public SpkSpriteSheet(BufferedImage spritesheet, Map<Integer, Rect2D> spkiMapping)
+		public ArtifactWork(int index, long offset, @Nullable String digest, Artifact artifact, int animations)
 		{
-			m_spritesheet = spritesheet;
-			m_spkiMapping = spkiMapping;
+			m_index = index;
+			m_offset = offset;
+			m_digest = digest;
+			m_artifact = artifact;
+			m_pendingAnimations = new AtomicInteger(animations);
 		}
 		
-		public Rect2D getRegion(int spki)
+		public synchronized void addOutputs(List<String> outputs)
 		{
-			Rect2D mapping = m_spkiMapping.get(spki);
+			m_outputs.addAll(outputs);
+		}
+		
+		//Sorted, since animations are written in whatever order they finish.
+		public synchronized List<String> getOutputs()
+		{
+			List<String> outputs = new ArrayList<>(m_outputs);
+			Collections.sort(outputs);
 			
-			return mapping == null ? new Rect2D() : mapping;
+			return outputs;
 		}
+	}
+	
+	private static final class AnimationWork
+	{
+		private final ArtifactWork m_artifact;
+		private final String m_name;
+		private final ArtifactAnimation m_animation;
+		private SpkSpriteSheet m_spritesheet;
+		private byte[][] m_encodedPages;
+		//Sidecars of the encoded pages, null for every page if the output format needs none.
+		private byte[][] m_pageSidecars;
 		
-		public BufferedImage getSpritesheet()
+		public AnimationWork(ArtifactWork artifact, String name, ArtifactAnimation animation)
 		{
-			return m_spritesheet;
+			m_artifact = artifact;
+			m_name = name;
+			m_animation = animation;
 		}
 	}
 	
-	public static void main(String[] args)
+	//Visits the artifacts in the order they are stored and passes on the selected animations of those that are not up to date.
+	private final class ArtifactSource implements StagedPipeline.Source<AnimationWork>
 	{
-		m_logger.info("Dark Eden Artifact Animation Extraction Utility. Written by Jeremy Wildsmith. This software is open-sourced under GPLV3 license. The git repository for this project is hosted at https://github.com/JeremyWildsmith/darkedenkit");
-		m_logger.info("Command Line Arguments: [spk source] [spki source] [spk copy fill pattern = 01(spk) 011(ispk)] [cfpk source] [destination directory]");
+		private final SpkArchive m_spk;
+		private final ExportState m_state;
+		private final String[] m_recordDigests;
+		private int m_next = 0;
+		private int m_skipped = 0;
 		
-		if(args.length < 5)
-			m_logger.error("Insufficient arguments provided to run dump operation");
-		else
+		@Nullable
+		private ArtifactWork m_current;
+		private int m_nextAnimation = 0;
+		
+		public ArtifactSource(SpkArchive spk, ExportState state)
 		{
-			String copyFillPattern = args[2];
-			
-			if(copyFillPattern.isEmpty())
-				m_logger.error("Invalid copy fill pattern supplied.");
-			else
+			m_spk = spk;
+			m_state = state;
+			m_recordDigests = new String[spk.size()];
+		}
+		
+		@Nullable
+		private ArtifactWork nextArtifact()
+		{
+			while(m_next < m_state.m_artifacts.size())
 			{
-				boolean copyFillPatternBuffer[] = new boolean[copyFillPattern.length()];
+				StoredArtifact stored = m_state.m_artifacts.get(m_next++);
+				Artifact artifact = stored.m_artifact;
+				int index = artifact.getIndex();
+				m_state.m_metrics.addBytesRead(artifact.getEncodedLength());
+				
+				int animations = 0;
 				
-				for(int i = 0; i < copyFillPattern.length(); i++)
-					copyFillPatternBuffer[i] = copyFillPattern.charAt(i) == '1';
+				for(int a = 0; a < artifact.getAnimationCount(); a++)
+				{
+					if(isAnimationSelected(a))
+						animations++;
+				}
+				
+				String digest = digestArtifact(m_spk, artifact, m_recordDigests, m_state.m_metrics);
 				
-				File f = new File(args[4]);
-				if((!f.exists() && f.mkdirs()) || f.isDirectory())
-					new ArtifactAnimationDumper(new File(args[0]), new File(args[1]), new File(args[3]), f.toURI(), copyFillPatternBuffer).run();
+				if(digest != null && m_state.m_journal.isUpToDate(index, digest))
+				{
+					m_skipped++;
+					reportProgress(m_state);
+				} else if(animations == 0)
+					finishArtifact(m_state, new ArtifactWork(index, stored.m_offset, digest, artifact, animations));
 				else
-					m_logger.error("Destination argument must be a directory. Either the specified destionation is not of a directory, or this application failed to construct the directory. Operation aborted. The provided destination argument was not valid.");
+					return new ArtifactWork(index, stored.m_offset, digest, artifact, animations);
+			}
+			
+			return null;
+		}
+		
+		@Override
+		@Nullable
+		public AnimationWork next()
+		{
+			while(true)
+			{
+				if(m_current == null || m_nextAnimation >= m_current.m_artifact.getAnimationCount())
+				{
+					m_current = nextArtifact();
+					m_nextAnimation = 0;
+					
+					if(m_current == null)
+						return null;
+				}
+				
+				int animation = m_nextAnimation++;
+				
+				if(isAnimationSelected(animation))
+					return new AnimationWork(m_current, getAnimationName(animation), m_current.m_artifact.getAnimation(animation));
+			}
+		}
+		
+		//Only valid once the pipeline has finished.
+		public int getSkipped()
+		{
+			return m_skipped;
+		}
+	}
+	
+	private final class ComposeStage implements StagedPipeline.Stage<AnimationWork>
+	{
+		private final SpkSpriteCache m_sprites;
+		private final ExportState m_state;
+		
+		public ComposeStage(SpkSpriteCache sprites, ExportState state)
+		{
+			m_sprites = sprites;
+			m_state = state;
+		}
+		
+		@Override
+		public boolean process(AnimationWork work)
+		{
+			try
+			{
+				work.m_spritesheet = SpkSpriteSheet.compile(m_sprites, work.m_animation.getDependentSpki(), m_packer);
+			} catch (IOException e)
+			{
+				m_logger.error(String.format("Unable to compose the spritesheet of animation %s of artifact %d.", work.m_name, work.m_artifact.m_index), e);
+				work.m_artifact.m_failed = true;
+			}
+			
+			//If the spritesheet is null, then there were no renderable frames in the animation (ie, it was likely culled out of the build. Ignore the animation.
+			if(work.m_spritesheet == null)
+			{
+				finishAnimation(m_state, work.m_artifact);
+				return false;
+			}
+			
+			return true;
+		}
+	}
+	
+	private final class EncodeStage implements StagedPipeline.Stage<AnimationWork>
+	{
+		private final ExportState m_state;
+		
+		public EncodeStage(ExportState state)
+		{
+			m_state = state;
+		}
+		
+		@Override
+		public boolean process(AnimationWork work)
+		{
+			try
+			{
+				work.m_encodedPages = new byte[work.m_spritesheet.getPageCount()][];
+				work.m_pageSidecars = new byte[work.m_encodedPages.length][];
+				
+				for(int page = 0; page < work.m_encodedPages.length; page++)
+				{
+					ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+					m_imageEncoder.write(work.m_spritesheet.getSpritesheet(page), encoded);
+					work.m_encodedPages[page] = encoded.toByteArray();
+					work.m_pageSidecars[page] = m_imageEncoder.createSidecar(work.m_spritesheet.getSpritesheet(page));
+				}
+				
+				work.m_spritesheet.releaseSpritesheets();
+			} catch (IOException e)
+			{
+				m_logger.error(String.format("Unable to encode the spritesheet of animation %s of artifact %d.", work.m_name, work.m_artifact.m_index), e);
+				work.m_artifact.m_failed = true;
+				finishAnimation(m_state, work.m_artifact);
+				return false;
 			}
+			
+			return true;
+		}
+	}
+	
+	private final class WriteSink implements StagedPipeline.Sink<AnimationWork>
+	{
+		private final ExportState m_state;
+		
+		public WriteSink(ExportState state)
+		{
+			m_state = state;
+		}
+		
+		@Override
+		public void process(List<AnimationWork> batch)
+		{
+			for(AnimationWork work : batch)
+			{
+				try
+				{
+					List<String> outputs = writeAnimation(work);
+					
+					for(String output : outputs)
+						m_state.m_metrics.addBytesWritten(new File(m_destinationDirectory.resolve("./" + output)).length());
+					
+					work.m_artifact.addOutputs(outputs);
+				} catch (IOException e)
+				{
+					m_logger.error(String.format("Unable to write animation %s of artifact %d.", work.m_name, work.m_artifact.m_index), e);
+					work.m_artifact.m_failed = true;
+				}
+				
+				finishAnimation(m_state, work.m_artifact);
+			}
+		}
+	}
+	
+	//Animations may be selected by name, by id or as ranges of ids, for example idle,die,12-20.
+	@Nullable
+	private static IndexSelection getAnimationSelection(CommandLineArguments arguments) throws InvalidArgumentException
+	{
+		String value = arguments.getOption("animations", null);
+		
+		if(value == null)
+			return null;
+		
+		StringBuilder ids = new StringBuilder();
+		
+		for(String token : value.split(","))
+		{
+			int animation = getAnimationIndex(token.trim());
+			
+			if(ids.length() > 0)
+				ids.append(',');
+			
+			ids.append(animation < 0 ? token : String.valueOf(animation));
+		}
+		
+		try
+		{
+			return IndexSelection.parse(ids.toString());
+		} catch (IllegalArgumentException e)
+		{
+			throw new InvalidArgumentException(String.format("Option --animations expects animation names, ids and ranges of ids such as idle,die,12-20 but was given '%s'. %s", value, e.getMessage()));
+		}
+	}
+	
+	//Builds a dumper from the arguments main accepts, checking them the same way. The destination directory is created if it does not exist.
+	static ArtifactAnimationDumper fromArguments(CommandLineArguments arguments) throws InvalidArgumentException
+	{
+		if(arguments.getPositionalCount() < 5)
+			throw new InvalidArgumentException("Insufficient arguments provided to run dump operation.");
+		
+		String copyFillPattern = arguments.getPositional(2);
+		
+		if(copyFillPattern.isEmpty())
+			throw new InvalidArgumentException("Invalid copy fill pattern supplied.");
+		
+		boolean copyFillPatternBuffer[] = new boolean[copyFillPattern.length()];
+		
+		for(int i = 0; i < copyFillPattern.length(); i++)
+			copyFillPatternBuffer[i] = copyFillPattern.charAt(i) == '1';
+		
+		int cacheBudget = arguments.getIntOption("cache-budget", DEFAULT_SPRITE_CACHE_BUDGET_MB);
+		int pngLevel = arguments.getIntOption("png-level", PngEncoder.DEFAULT_COMPRESSION_LEVEL);
+		int maxPageSize = arguments.getIntOption("max-page-size", DEFAULT_MAX_PAGE_SIZE);
+		int workerThreads = arguments.getIntOption("threads", Runtime.getRuntime().availableProcessors());
+		String metadataCache = arguments.getOption("metadata-cache", null);
+		IndexSelection artifactSelection = arguments.getIndexSelectionOption("artifacts");
+		IndexSelection animationSelection = getAnimationSelection(arguments);
+		ImageEncoder imageEncoder = ImageFormats.create(arguments.getOption("format", ImageFormats.DEFAULT_FORMAT), pngLevel);
+		
+		if(cacheBudget < 0)
+			throw new InvalidArgumentException("Sprite cache budget must not be negative.");
+		
+		if(pngLevel < 0 || pngLevel > 9)
+			throw new InvalidArgumentException("PNG compression level must be between 0 and 9.");
+		
+		if(imageEncoder == null)
+			throw new InvalidArgumentException("Output format must be one of " + ImageFormats.FORMAT_NAMES + ".");
+		
+		if(maxPageSize <= 0)
+			throw new InvalidArgumentException("Maximum spritesheet page size must be positive.");
+		
+		if(workerThreads <= 0)
+			throw new InvalidArgumentException("At least one worker thread is required.");
+		
+		File f = new File(arguments.getPositional(4));
+		
+		if(!f.isDirectory() && !f.mkdirs())
+			throw new InvalidArgumentException("Destination argument must be a directory. Either the specified destionation is not of a directory, or this application failed to construct the directory. The provided destination argument was not valid.");
+		
+		return new ArtifactAnimationDumper(new File(arguments.getPositional(0)), new File(arguments.getPositional(1)), new File(arguments.getPositional(3)), f.toURI(), copyFillPatternBuffer, cacheBudget * BYTES_PER_MB, imageEncoder, maxPageSize, arguments.hasOption("rebuild"), workerThreads, metadataCache == null ? null : new PkMetadataCache(new File(metadataCache)), artifactSelection, animationSelection);
+	}
+	
+	public static void main(String[] args)
+	{
+		m_logger.info("Dark Eden Artifact Animation Extraction Utility. Written by Jeremy Wildsmith. This software is open-sourced under GPLV3 license. The git repository for this project is hosted at https://github.com/JeremyWildsmith/darkedenkit");
+		m_logger.info("Command Line Arguments: [spk source] [spki source] [spk copy fill pattern = 01(spk) 011(ispk)] [cfpk source] [destination directory] [--cache-budget=decoded sprite cache size in MB, defaults to " + DEFAULT_SPRITE_CACHE_BUDGET_MB + "] [--png-level=png compression level from 0 (fastest) to 9 (smallest), defaults to " + PngEncoder.DEFAULT_COMPRESSION_LEVEL + "] [--format=spritesheet image format, one of " + ImageFormats.FORMAT_NAMES + ", raw rgba and rgb565 pages are described by a .json sidecar next to each page, defaults to " + ImageFormats.DEFAULT_FORMAT + "] [--max-page-size=maximum spritesheet page width and height in pixels, defaults to " + DEFAULT_MAX_PAGE_SIZE + "] [--rebuild (export everything, even artifacts a previous run into the destination already exported)] [--threads=spritesheet encoder threads, defaults to the number of available processors] [--metadata-cache=directory in which parsed spki and cfpk metadata is kept for later runs, disabled by default] [--artifacts=artifact indices and ranges to export, such as 120-180,200, defaults to every artifact] [--animations=animation names, ids and ranges of ids to export, such as idle,die,12-20, defaults to every animation]");
+		
+		try
+		{
+			fromArguments(new CommandLineArguments(args)).run();
+		} catch (InvalidArgumentException e)
+		{
+			m_logger.error(e.getMessage() + " Operation aborted.");
 		}
 	}
 }
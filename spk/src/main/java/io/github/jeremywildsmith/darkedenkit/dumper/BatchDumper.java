@@ -0,0 +1,346 @@
+package io.github.jeremywildsmith.darkedenkit.dumper;
+
+import io.github.jeremywildsmith.darkedenkit.Nullable;
+import io.github.jeremywildsmith.darkedenkit.dumper.CommandLineArguments.InvalidArgumentException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+//Runs many dumps in one JVM, so starting it and warming up the JIT is only paid for once. Jobs are read from a job file, one per line:
+//    [spk source] [spki source] [cfpk source, or - for none] [spk copy fill pattern] [destination directory] [--options of the job]
+//Jobs with a cfpk export artifact animations as ArtifactAnimationDumper does, jobs without one extract sprites as SpkDumper does. Fields are
+//separated by whitespace and may be double quoted. Relative paths are resolved against the directory of the job file. Blank lines and lines
+//starting with # are ignored.
+//
+//Options given to the batch apply to every job, options on the line of a job override them. Jobs run as tasks of a single work stealing
+//pool, each with its own dumper, so no two jobs share any state besides the pool.
+public final class BatchDumper
+{
+	private static final String NO_CFPK = "-";
+	private static final String COMMENT_PREFIX = "#";
+	private static final Charset JOB_FILE_CHARSET = Charset.forName("UTF-8");
+	private static final int JOB_FIELDS = 5;
+
+	private static final Logger m_logger = LoggerFactory.getLogger(BatchDumper.class);
+
+	private final List<Job> m_jobs;
+	private final int m_parallelism;
+
+	private BatchDumper(List<Job> jobs, int parallelism)
+	{
+		m_jobs = jobs;
+		m_parallelism = parallelism;
+	}
+
+	//Splits a line into whitespace separated fields, any of which may be double quoted to include whitespace.
+	private static List<String> splitFields(String line) throws InvalidArgumentException
+	{
+		List<String> fields = new ArrayList<>();
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+		boolean inField = false;
+
+		for(int i = 0; i < line.length(); i++)
+		{
+			char c = line.charAt(i);
+
+			if(c == '"')
+			{
+				quoted = !quoted;
+				inField = true;
+			} else if(Character.isWhitespace(c) && !quoted)
+			{
+				if(inField)
+					fields.add(field.toString());
+
+				field.setLength(0);
+				inField = false;
+			} else
+			{
+				field.append(c);
+				inField = true;
+			}
+		}
+
+		if(quoted)
+			throw new InvalidArgumentException("Quoted field is never closed.");
+
+		if(inField)
+			fields.add(field.toString());
+
+		return fields;
+	}
+
+	private static String resolve(File base, String path)
+	{
+		File file = new File(path);
+
+		return file.isAbsolute() ? path : new File(base, path).getPath();
+	}
+
+	//Jobs are read up front, but their dumpers are only created once they run. A job that can not be read is reported as invalid when the
+	//batch runs, the other jobs still run.
+	private static List<Job> readJobs(File jobFile, List<String> batchOptions) throws IOException
+	{
+		File base = jobFile.getAbsoluteFile().getParentFile();
+		List<String> lines = Files.readAllLines(jobFile.toPath(), JOB_FILE_CHARSET);
+		List<Job> jobs = new ArrayList<>();
+		Map<String, Integer> destinations = new HashMap<>();
+
+		for(int i = 0; i < lines.size(); i++)
+		{
+			String line = lines.get(i).trim();
+			int lineNumber = i + 1;
+
+			if(line.isEmpty() || line.startsWith(COMMENT_PREFIX))
+				continue;
+
+			List<String> positional = new ArrayList<>();
+			List<String> options = new ArrayList<>(batchOptions);
+
+			try
+			{
+				for(String field : splitFields(line))
+				{
+					if(field.startsWith("--"))
+						options.add(field);
+					else
+						positional.add(field);
+				}
+
+				if(positional.size() != JOB_FIELDS)
+					throw new InvalidArgumentException(String.format("Expected %d fields but found %d.", JOB_FIELDS, positional.size()));
+
+				String spk = resolve(base, positional.get(0));
+				String spki = resolve(base, positional.get(1));
+				String cfpk = positional.get(2).equals(NO_CFPK) ? null : resolve(base, positional.get(2));
+				String pattern = positional.get(3);
+				String destination = resolve(base, positional.get(4));
+
+				//Dumps into the same destination would overwrite each other's journal.
+				String canonicalDestination = new File(destination).getCanonicalPath();
+				Integer other = destinations.get(canonicalDestination);
+
+				if(other != null)
+					throw new InvalidArgumentException(String.format("Destination is already used by the job on line %d.", other));
+
+				destinations.put(canonicalDestination, lineNumber);
+
+				List<String> arguments = new ArrayList<>();
+
+				if(cfpk == null)
+					arguments.addAll(Arrays.asList(spk, spki, destination, pattern));
+				else
+					arguments.addAll(Arrays.asList(spk, spki, pattern, cfpk, destination));
+
+				arguments.addAll(options);
+
+				jobs.add(new Job(lineNumber, destination, cfpk != null, arguments.toArray(new String[arguments.size()]), null));
+			} catch (InvalidArgumentException e)
+			{
+				jobs.add(new Job(lineNumber, line, false, new String[0], e.getMessage()));
+			}
+		}
+
+		return jobs;
+	}
+
+	//Returns true if every job completed.
+	public boolean run()
+	{
+		long start = System.nanoTime();
+		List<ForkJoinTask<JobStatus>> tasks = new ArrayList<>();
+
+		//Jobs block their worker thread until their dump is done, so at most parallelism jobs run at once.
+		ForkJoinPool pool = new ForkJoinPool(m_parallelism);
+
+		try
+		{
+			for(Job job : m_jobs)
+				tasks.add(pool.submit(new JobTask(job)));
+
+			int completed = 0;
+			int failed = 0;
+			int invalid = 0;
+
+			for(int i = 0; i < tasks.size(); i++)
+			{
+				JobStatus status;
+
+				try
+				{
+					status = tasks.get(i).get();
+				} catch (ExecutionException e)
+				{
+					m_logger.error(String.format("Job on line %d terminated unexpectedly.", m_jobs.get(i).m_line), e.getCause());
+					status = JobStatus.FAILED;
+				}
+
+				if(status == JobStatus.COMPLETED)
+					completed++;
+				else if(status == JobStatus.FAILED)
+					failed++;
+				else
+					invalid++;
+			}
+
+			m_logger.info(String.format("Batch finished in %.2f s: %d of %d jobs completed, %d failed, %d invalid.",
+											(System.nanoTime() - start) / (double)TimeUnit.SECONDS.toNanos(1), completed, m_jobs.size(), failed, invalid));
+
+			return completed == m_jobs.size();
+		} catch (InterruptedException e)
+		{
+			m_logger.error("Interrupted while waiting for jobs to complete. Terminating batch.", e);
+			Thread.currentThread().interrupt();
+
+			return false;
+		} finally
+		{
+			pool.shutdownNow();
+		}
+	}
+
+	private enum JobStatus
+	{
+		COMPLETED("completed"),
+		FAILED("failed"),
+		INVALID("invalid");
+
+		private final String m_name;
+
+		private JobStatus(String name)
+		{
+			m_name = name;
+		}
+
+		public String getName()
+		{
+			return m_name;
+		}
+	}
+
+	private static final class Job
+	{
+		private final int m_line;
+		private final String m_description;
+		private final boolean m_artifacts;
+		private final String[] m_arguments;
+		@Nullable
+		private final String m_error;
+
+		public Job(int line, String description, boolean artifacts, String[] arguments, @Nullable String error)
+		{
+			m_line = line;
+			m_description = description;
+			m_artifacts = artifacts;
+			m_arguments = arguments;
+			m_error = error;
+		}
+	}
+
+	private static final class JobTask implements Callable<JobStatus>
+	{
+		private final Job m_job;
+
+		public JobTask(Job job)
+		{
+			m_job = job;
+		}
+
+		private JobStatus execute()
+		{
+			if(m_job.m_error != null)
+			{
+				m_logger.error(String.format("Job on line %d is invalid. %s", m_job.m_line, m_job.m_error));
+				return JobStatus.INVALID;
+			}
+
+			m_logger.info(String.format("Starting job on line %d, %s into %s.", m_job.m_line, m_job.m_artifacts ? "artifacts" : "sprites", m_job.m_description));
+
+			try
+			{
+				CommandLineArguments arguments = new CommandLineArguments(m_job.m_arguments);
+				boolean completed = m_job.m_artifacts ? ArtifactAnimationDumper.fromArguments(arguments).execute() : SpkDumper.fromArguments(arguments).execute();
+
+				return completed ? JobStatus.COMPLETED : JobStatus.FAILED;
+			} catch (InvalidArgumentException e)
+			{
+				m_logger.error(String.format("Job on line %d is invalid. %s", m_job.m_line, e.getMessage()));
+				return JobStatus.INVALID;
+			}
+		}
+
+		@Override
+		public JobStatus call()
+		{
+			long start = System.nanoTime();
+			JobStatus status = execute();
+
+			m_logger.info(String.format("Job on line %d %s in %.2f s.", m_job.m_line, status.getName(), (System.nanoTime() - start) / (double)TimeUnit.SECONDS.toNanos(1)));
+
+			return status;
+		}
+	}
+
+	public static void main(String[] args)
+	{
+		int processors = Runtime.getRuntime().availableProcessors();
+
+		m_logger.info("Dark Eden Batch Extraction Utility. Written by Jeremy Wildsmith. This software is open-sourced under GPLV3 license. The git repository for this project is hosted at https://github.com/JeremyWildsmith/darkedenkit");
+		m_logger.info("Command Line Arguments: [job file, one job per line: spk source, spki source, cfpk source or - to extract sprites only, copy fill pattern, destination directory, then any options of that job] [--jobs=jobs run at once, defaults to the number of available processors] [--threads=worker threads of each job, defaults to the available processors divided by the jobs run at once] [any other option of SpkDumper or ArtifactAnimationDumper, applied to every job]");
+
+		CommandLineArguments arguments = new CommandLineArguments(args);
+
+		if(arguments.getPositionalCount() < 1)
+		{
+			m_logger.error("Insufficient arguments provided to run batch operation");
+			return;
+		}
+
+		try
+		{
+			int parallelism = arguments.getIntOption("jobs", processors);
+
+			if(parallelism <= 0)
+				throw new InvalidArgumentException("At least one job must be run at once.");
+
+			//Options are passed on to the dumpers as they were given, a default thread count first so that one given explicitly overrides it.
+			List<String> batchOptions = new ArrayList<>();
+			batchOptions.add(String.format("--threads=%d", Math.max(1, processors / parallelism)));
+
+			for(String arg : args)
+			{
+				if(arg.startsWith("--"))
+					batchOptions.add(arg);
+			}
+
+			List<Job> jobs = readJobs(new File(arguments.getPositional(0)), batchOptions);
+
+			if(jobs.isEmpty())
+				m_logger.info("Job file lists no jobs. There is nothing to extract.");
+			else
+				new BatchDumper(jobs, parallelism).run();
+		} catch (InvalidArgumentException e)
+		{
+			m_logger.error(e.getMessage() + " Operation aborted.");
+		} catch (IOException e)
+		{
+			m_logger.error("Unable to read job file. Operation aborted.", e);
+		}
+	}
+}
@@ -0,0 +1,101 @@
+package io.github.jeremywildsmith.darkedenkit.dumper;
+
+import io.github.jeremywildsmith.darkedenkit.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//Splits command line arguments into positional arguments and optional --name=value options, which may appear anywhere.
+final class CommandLineArguments
+{
+	private static final String OPTION_PREFIX = "--";
+	
+	private final List<String> m_positional = new ArrayList<>();
+	private final Map<String, String> m_options = new HashMap<>();
+	
+	public CommandLineArguments(String[] args)
+	{
+		for(String arg : args)
+		{
+			if(!arg.startsWith(OPTION_PREFIX))
+				m_positional.add(arg);
+			else
+			{
+				int separator = arg.indexOf('=');
+				
+				if(separator < 0)
+					m_options.put(arg.substring(OPTION_PREFIX.length()), "");
+				else
+					m_options.put(arg.substring(OPTION_PREFIX.length(), separator), arg.substring(separator + 1));
+			}
+		}
+	}
+	
+	public int getPositionalCount()
+	{
+		return m_positional.size();
+	}
+	
+	public String getPositional(int index)
+	{
+		return m_positional.get(index);
+	}
+	
+	public boolean hasOption(String name)
+	{
+		return m_options.containsKey(name);
+	}
+	
+	public String getOption(String name, String defaultValue)
+	{
+		String value = m_options.get(name);
+		
+		return value == null ? defaultValue : value;
+	}
+	
+	public int getIntOption(String name, int defaultValue) throws InvalidArgumentException
+	{
+		String value = m_options.get(name);
+		
+		if(value == null)
+			return defaultValue;
+		
+		try
+		{
+			return Integer.parseInt(value);
+		} catch(NumberFormatException e)
+		{
+			throw new InvalidArgumentException(String.format("Option --%s expects an integer value but was given '%s'.", name, value));
+		}
+	}
+	
+	//Returns null if the option is not given, in which case nothing should be filtered out.
+	@Nullable
+	public IndexSelection getIndexSelectionOption(String name) throws InvalidArgumentException
+	{
+		String value = m_options.get(name);
+		
+		if(value == null)
+			return null;
+		
+		try
+		{
+			return IndexSelection.parse(value);
+		} catch(IllegalArgumentException e)
+		{
+			throw new InvalidArgumentException(String.format("Option --%s expects a list of indices and ranges such as 120-180,200 but was given '%s'. %s", name, value, e.getMessage()));
+		}
+	}
+	
+	public static final class InvalidArgumentException extends Exception
+	{
+		private static final long serialVersionUID = 1L;
+		
+		public InvalidArgumentException(String message)
+		{
+			super(message);
+		}
+	}
+}
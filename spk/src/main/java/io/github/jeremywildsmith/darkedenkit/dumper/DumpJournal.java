@@ -0,0 +1,224 @@
+package io.github.jeremywildsmith.darkedenkit.dumper;
+
+import io.github.jeremywildsmith.darkedenkit.Nullable;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+//Append-only record of the work a dumper has completed in its destination directory, which lets later runs skip work whose
+//inputs are unchanged and whose outputs still exist. Every entry is flushed as soon as it is recorded so that an interrupted
+//run can be resumed, and the journal is compacted to one entry per index when it is closed.
+//
+//The first line of the journal holds the configuration of the run that wrote it. A journal written with a different
+//configuration is discarded, since its outputs would not match what the current run produces.
+final class DumpJournal implements Closeable
+{
+	public static final String JOURNAL_NAME = "dump-journal.tsv";
+
+	private static final Charset JOURNAL_CHARSET = Charset.forName("UTF-8");
+	private static final String FIELD_SEPARATOR = "\t";
+	private static final String NO_CONTENT = "-";
+	private static final String CONFIGURATION_PREFIX = "#";
+
+	private final File m_journalFile;
+	private final URI m_destinationDirectory;
+	private final String m_configuration;
+
+	//Guarded by this journal's monitor.
+	private final Map<Integer, Entry> m_entries;
+	private final Writer m_writer;
+
+	private DumpJournal(File journalFile, URI destinationDirectory, String configuration, Map<Integer, Entry> entries, Writer writer)
+	{
+		m_journalFile = journalFile;
+		m_destinationDirectory = destinationDirectory;
+		m_configuration = configuration;
+		m_entries = entries;
+		m_writer = writer;
+	}
+
+	//Opens the journal in the destination directory. If rebuild is set, or the journal was written with another configuration, all previous entries are discarded.
+	public static DumpJournal open(URI destinationDirectory, String configuration, boolean rebuild) throws IOException
+	{
+		File journalFile = new File(destinationDirectory.resolve("./" + JOURNAL_NAME));
+		Map<Integer, Entry> entries = new TreeMap<>();
+
+		boolean resume = !rebuild && journalFile.exists() && readEntries(journalFile, configuration, entries);
+
+		Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(journalFile, resume), JOURNAL_CHARSET));
+
+		if(!resume)
+		{
+			entries.clear();
+			writer.write(CONFIGURATION_PREFIX + configuration + "\n");
+			writer.flush();
+		}
+
+		return new DumpJournal(journalFile, destinationDirectory, configuration, entries, writer);
+	}
+
+	//Returns false if the journal belongs to a different configuration. Lines that cannot be parsed, such as one cut short when a run was killed, are ignored.
+	private static boolean readEntries(File journalFile, String configuration, Map<Integer, Entry> entries) throws IOException
+	{
+		try(BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(journalFile), JOURNAL_CHARSET)))
+		{
+			String header = reader.readLine();
+
+			if(header == null || !header.equals(CONFIGURATION_PREFIX + configuration))
+				return false;
+
+			for(String line = reader.readLine(); line != null; line = reader.readLine())
+			{
+				String fields[] = line.split(FIELD_SEPARATOR, -1);
+
+				if(fields.length < 4)
+					continue;
+
+				try
+				{
+					int index = Integer.parseInt(fields[0]);
+					long offset = Long.parseLong(fields[1]);
+					String content = fields[3].equals(NO_CONTENT) ? null : fields[3];
+
+					entries.put(index, new Entry(offset, fields[2], content, Arrays.asList(Arrays.copyOfRange(fields, 4, fields.length))));
+				} catch (NumberFormatException e)
+				{
+					continue;
+				}
+			}
+		}
+
+		return true;
+	}
+
+	private static String format(int index, Entry entry)
+	{
+		StringBuilder sb = new StringBuilder();
+		sb.append(index).append(FIELD_SEPARATOR).append(entry.getOffset()).append(FIELD_SEPARATOR).append(entry.getHash());
+		sb.append(FIELD_SEPARATOR).append(entry.getContent() == null ? NO_CONTENT : entry.getContent());
+
+		for(String output : entry.getOutputs())
+			sb.append(FIELD_SEPARATOR).append(output);
+
+		return sb.append('\n').toString();
+	}
+
+	@Nullable
+	public synchronized Entry get(int index)
+	{
+		return m_entries.get(index);
+	}
+
+	//True if the index was last recorded with the given hash and all of its outputs still exist.
+	public boolean isUpToDate(int index, String hash)
+	{
+		Entry entry = get(index);
+
+		if(entry == null || !entry.getHash().equals(hash))
+			return false;
+
+		for(String output : entry.getOutputs())
+		{
+			if(!new File(m_destinationDirectory.resolve("./" + output)).isFile())
+				return false;
+		}
+
+		return true;
+	}
+
+	//Outputs are paths relative to the destination directory and must already have been completely written.
+	public void record(int index, long offset, String hash, @Nullable String content, List<String> outputs) throws IOException
+	{
+		for(String output : outputs)
+		{
+			if(output.contains(FIELD_SEPARATOR) || output.contains("\n"))
+				throw new IllegalArgumentException("Output paths must not contain tabs or line breaks.");
+		}
+
+		Entry entry = new Entry(offset, hash, content, new ArrayList<>(outputs));
+
+		synchronized(this)
+		{
+			m_entries.put(index, entry);
+			m_writer.write(format(index, entry));
+			m_writer.flush();
+		}
+	}
+
+	//Rewrites the journal with only the latest entry of each index, replacing the old journal once the new one is complete.
+	@Override
+	public synchronized void close() throws IOException
+	{
+		m_writer.close();
+
+		File compacted = new File(m_journalFile.getPath() + ".tmp");
+
+		try(Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(compacted), JOURNAL_CHARSET)))
+		{
+			writer.write(CONFIGURATION_PREFIX + m_configuration + "\n");
+
+			for(Map.Entry<Integer, Entry> e : m_entries.entrySet())
+				writer.write(format(e.getKey(), e.getValue()));
+		}
+
+		Files.move(compacted.toPath(), m_journalFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	public static final class Entry
+	{
+		private final long m_offset;
+		private final String m_hash;
+		@Nullable
+		private final String m_content;
+		private final List<String> m_outputs;
+
+		public Entry(long offset, String hash, @Nullable String content, List<String> outputs)
+		{
+			m_offset = offset;
+			m_hash = hash;
+			m_content = content;
+			m_outputs = Collections.unmodifiableList(outputs);
+		}
+
+		public long getOffset()
+		{
+			return m_offset;
+		}
+
+		//Digest of everything the outputs were generated from.
+		public String getHash()
+		{
+			return m_hash;
+		}
+
+		//Optional digest of what was written, for outputs that may be shared between entries.
+		@Nullable
+		public String getContent()
+		{
+			return m_content;
+		}
+
+		public List<String> getOutputs()
+		{
+			return m_outputs;
+		}
+	}
+}
@@ -0,0 +1,155 @@
+package io.github.jeremywildsmith.darkedenkit.dumper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+//An immutable set of non-negative indices, written as a comma separated list of indices and inclusive ranges, for example 120-180,200,205-210.
+//Held as sorted, disjoint ranges so a selection such as 0-2000000000 costs no more than a single index. Safe to share between threads.
+public final class IndexSelection
+{
+	private final int[] m_starts;
+	private final int[] m_ends;
+
+	//Ranges are inclusive, may overlap and may be given in any order.
+	private IndexSelection(List<int[]> ranges)
+	{
+		Collections.sort(ranges, new Comparator<int[]>() {
+			@Override
+			public int compare(int[] a, int[] b)
+			{
+				return Integer.compare(a[0], b[0]);
+			}
+		});
+
+		List<int[]> merged = new ArrayList<>();
+
+		for(int[] range : ranges)
+		{
+			int last[] = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+
+			if(last != null && (long)range[0] <= (long)last[1] + 1)
+				last[1] = Math.max(last[1], range[1]);
+			else
+				merged.add(new int[] {range[0], range[1]});
+		}
+
+		m_starts = new int[merged.size()];
+		m_ends = new int[merged.size()];
+
+		for(int i = 0; i < merged.size(); i++)
+		{
+			m_starts[i] = merged.get(i)[0];
+			m_ends[i] = merged.get(i)[1];
+		}
+	}
+
+	//Throws an IllegalArgumentException describing the problem if the selection can not be parsed.
+	public static IndexSelection parse(String selection)
+	{
+		List<int[]> ranges = new ArrayList<>();
+
+		for(String token : selection.split(","))
+		{
+			String range = token.trim();
+			int separator = range.indexOf('-', 1);
+
+			try
+			{
+				int start = Integer.parseInt(separator < 0 ? range : range.substring(0, separator).trim());
+				int end = separator < 0 ? start : Integer.parseInt(range.substring(separator + 1).trim());
+
+				if(start < 0 || end < start)
+					throw new IllegalArgumentException(String.format("'%s' is not a valid range of indices.", range));
+
+				ranges.add(new int[] {start, end});
+			} catch (NumberFormatException e)
+			{
+				throw new IllegalArgumentException(String.format("'%s' is not an index or a range of indices.", range));
+			}
+		}
+
+		return new IndexSelection(ranges);
+	}
+
+	public static IndexSelection of(int... indices)
+	{
+		List<int[]> ranges = new ArrayList<>();
+
+		for(int index : indices)
+		{
+			if(index < 0)
+				throw new IllegalArgumentException("Selected indices must not be negative.");
+
+			ranges.add(new int[] {index, index});
+		}
+
+		return new IndexSelection(ranges);
+	}
+
+	public boolean contains(int index)
+	{
+		int low = 0;
+		int high = m_starts.length - 1;
+
+		while(low <= high)
+		{
+			int middle = (low + high) >>> 1;
+
+			if(index < m_starts[middle])
+				high = middle - 1;
+			else if(index > m_ends[middle])
+				low = middle + 1;
+			else
+				return true;
+		}
+
+		return false;
+	}
+
+	//The selected indices below the limit, in ascending order.
+	public int[] toArray(int limit)
+	{
+		int count = 0;
+
+		for(int i = 0; i < m_starts.length && m_starts[i] < limit; i++)
+			count += Math.min(m_ends[i], limit - 1) - m_starts[i] + 1;
+
+		int indices[] = new int[count];
+		int next = 0;
+
+		for(int i = 0; i < m_starts.length && m_starts[i] < limit; i++)
+		{
+			for(int index = m_starts[i]; index <= Math.min(m_ends[i], limit - 1); index++)
+				indices[next++] = index;
+		}
+
+		return indices;
+	}
+
+	//True if some selected index is not below the limit.
+	public boolean exceeds(int limit)
+	{
+		return m_ends.length > 0 && m_ends[m_ends.length - 1] >= limit;
+	}
+
+	@Override
+	public String toString()
+	{
+		StringBuilder sb = new StringBuilder();
+
+		for(int i = 0; i < m_starts.length; i++)
+		{
+			if(i > 0)
+				sb.append(',');
+
+			sb.append(m_starts[i]);
+
+			if(m_ends[i] != m_starts[i])
+				sb.append('-').append(m_ends[i]);
+		}
+
+		return sb.toString();
+	}
+}
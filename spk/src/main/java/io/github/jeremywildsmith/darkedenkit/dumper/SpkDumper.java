@@ -1,126 +1,818 @@
 package io.github.jeremywildsmith.darkedenkit.dumper;
 
-import io.github.jeremywildsmith.darkedenkit.dumper.pk.PkIndexExtractor;
+import io.github.jeremywildsmith.darkedenkit.ContentDigest;
+import io.github.jeremywildsmith.darkedenkit.ExtractionMetrics;
+import io.github.jeremywildsmith.darkedenkit.ImageEncoder;
+import io.github.jeremywildsmith.darkedenkit.ImageFormats;
+import io.github.jeremywildsmith.darkedenkit.Nullable;
+import io.github.jeremywildsmith.darkedenkit.PngEncoder;
+import io.github.jeremywildsmith.darkedenkit.StagedPipeline;
+import io.github.jeremywildsmith.darkedenkit.dumper.CommandLineArguments.InvalidArgumentException;
 import io.github.jeremywildsmith.darkedenkit.dumper.pk.PkIndexExtractor.PkiParseException;
 import io.github.jeremywildsmith.darkedenkit.dumper.pk.PkSpriteExtractor;
+import io.github.jeremywildsmith.darkedenkit.dumper.pk.SpkArchive;
 
+import java.awt.Dimension;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.RandomAccessFile;
 import java.net.URI;
-import java.nio.channels.Channels;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
 
-import javax.imageio.ImageIO;
+import javax.management.JMException;
 
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public final class SpkDumper implements Runnable
 {
-	private static final String OUTPUT_IMAGE_FORMAT = "png";
+	//Read back by SpkRepacker.
+	static final String MANIFEST_NAME = "manifest.json";
+	
+	//Bounds the sprites held between pipeline stages, and so the memory used when one stage falls behind the others.
+	private static final int PIPELINE_QUEUE_CAPACITY = 64;
+	private static final int WRITE_BATCH_SIZE = 32;
+	
+	//Thread safe, so one factory creates the generators of every manifest.
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
 	
 	private static final Logger m_logger = LoggerFactory.getLogger(SpkDumper.class);
 
 	private final File m_sourcePkFile;
 	private final File m_sourcePkiFile;
 	private final URI m_destinationDirectory;
-	private final PkSpriteExtractor m_extractor;
+	private final boolean[] m_copyFillPattern;
+	private final int m_workerThreads;
+	private final ImageEncoder m_imageEncoder;
+	private final DeduplicationMode m_deduplicationMode;
+	private final boolean m_rebuild;
+	@Nullable
+	private final IndexSelection m_indices;
 
-	public SpkDumper(File sourcePkFile, File sourcePkiFile, URI destinationDirectory, boolean[] spkCopyFillPattern)
+	//Unless rebuild is set, sprites that a previous run into the same destination already extracted from identical records are skipped.
+	//If indices are given, only those sprites are extracted and only their records are read. Sprites that are not selected keep whatever
+	//a previous run extracted for them.
+	public SpkDumper(File sourcePkFile, File sourcePkiFile, URI destinationDirectory, boolean[] spkCopyFillPattern, int workerThreads, ImageEncoder imageEncoder, DeduplicationMode deduplicationMode, boolean rebuild, @Nullable IndexSelection indices)
 	{
+		if(workerThreads <= 0)
+			throw new IllegalArgumentException("At least one worker thread is required.");
+		
 		m_sourcePkFile = sourcePkFile;
 		m_sourcePkiFile = sourcePkiFile;
 		m_destinationDirectory = destinationDirectory;
-
-		m_extractor = new PkSpriteExtractor(spkCopyFillPattern);
+		m_copyFillPattern = spkCopyFillPattern;
+		m_workerThreads = workerThreads;
+		m_imageEncoder = imageEncoder;
+		m_deduplicationMode = deduplicationMode;
+		m_rebuild = rebuild;
+		m_indices = indices;
+	}
+	
+	public SpkDumper(File sourcePkFile, File sourcePkiFile, URI destinationDirectory, boolean[] spkCopyFillPattern, int workerThreads, ImageEncoder imageEncoder, DeduplicationMode deduplicationMode, boolean rebuild)
+	{
+		this(sourcePkFile, sourcePkiFile, destinationDirectory, spkCopyFillPattern, workerThreads, imageEncoder, deduplicationMode, rebuild, null);
+	}
+	
+	public SpkDumper(File sourcePkFile, File sourcePkiFile, URI destinationDirectory, boolean[] spkCopyFillPattern)
+	{
+		this(sourcePkFile, sourcePkiFile, destinationDirectory, spkCopyFillPattern, Runtime.getRuntime().availableProcessors(), new PngEncoder(), DeduplicationMode.NONE, false);
 	}
 	
 	@Override
 	public final void run()
 	{
-		long pkIndices[] = new long[0];
+		execute();
+	}
+	
+	//Returns false if an error terminated the extraction. Sprites that fail on their own are logged and skipped without failing the extraction.
+	//Holds no state between calls, so a dumper may be run any number of times, also concurrently with other dumpers.
+	public boolean execute()
+	{
+		boolean completed = false;
 		
-		try(FileInputStream spkiFis = new FileInputStream(m_sourcePkiFile))
+		try(SpkArchive spk = SpkArchive.open(m_sourcePkFile, m_sourcePkiFile, m_copyFillPattern))
 		{
-			pkIndices = new PkIndexExtractor().extract(spkiFis);
-		} catch (IOException | PkiParseException e)
+			if(spk.size() == 0)
+			{
+				m_logger.info("No spk graphic indices associated to respective SPK document. There is nothing to extract.");
+				completed = true;
+			} else
+			{
+				try(DumpJournal journal = DumpJournal.open(m_destinationDirectory, getConfiguration(), m_rebuild))
+				{
+					completed = dump(spk, journal);
+				}
+			}
+		} catch (PkiParseException e)
 		{
 			m_logger.error("Unable to extract spki indices, assuming no indexes.", e);
+			m_logger.info("No spk graphic indices associated to respective SPK document. There is nothing to extract.");
+		} catch (IOException e)
+		{
+			m_logger.error("Error encountered extracting graphic images. Terminating extraction operation.", e);
 		}
 		
-		if(pkIndices.length == 0)
-			m_logger.info("No spk graphic indices associated to respective SPK document. There is nothing to extract.");
-		else
+		m_logger.info("Done");
+		
+		return completed;
+	}
+	
+	//Everything besides the source records that affects the files written. Journals written under another configuration are discarded.
+	private String getConfiguration()
+	{
+		StringBuilder pattern = new StringBuilder();
+		
+		for(boolean copy : m_copyFillPattern)
+			pattern.append(copy ? '1' : '0');
+		
+		return String.format("spk pattern=%s %s dedupe=%s", pattern, m_imageEncoder.getConfiguration(), m_deduplicationMode.getName());
+	}
+	
+	//The sprites to extract, in the order their records are stored so that the archive is read sequentially.
+	private List<Integer> selectSprites(final SpkArchive spk)
+	{
+		List<Integer> sprites = new ArrayList<>();
+		
+		if(m_indices == null)
+		{
+			for(int i = 0; i < spk.size(); i++)
+				sprites.add(i);
+		} else
+		{
+			if(m_indices.exceeds(spk.size()))
+				m_logger.warn(String.format("Some of the selected indices %s are not in the spki, which only holds %d sprites. They are ignored.", m_indices, spk.size()));
+			
+			for(int i : m_indices.toArray(spk.size()))
+				sprites.add(i);
+			
+			m_logger.info(String.format("Selected %d of %d sprites.", sprites.size(), spk.size()));
+		}
+		
+		Collections.sort(sprites, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b)
+			{
+				return Long.compare(spk.getOrigin(a), spk.getOrigin(b));
+			}
+		});
+		
+		return sprites;
+	}
+	
+	//Only the selected sprites are digested. Sprites whose record cannot be read are left without a digest, the failure is reported when they are extracted.
+	private String[] digestRecords(SpkArchive spk, List<Integer> sprites, ExtractionMetrics metrics)
+	{
+		String digests[] = new String[spk.size()];
+		
+		for(int i : sprites)
+		{
+			ExtractionMetrics.Timer timer = metrics.startTimer("hash");
+			
+			try
+			{
+				digests[i] = ContentDigest.digest(spk.getRecordBytes(i));
+			} catch (IOException e)
+			{
+				m_logger.warn(String.format("Unable to read record of artifact at index %d, it will always be extracted.", i), e);
+			} finally
+			{
+				timer.stop();
+			}
+		}
+		
+		return digests;
+	}
+	
+	//Maps every sprite to the lowest index whose compressed record is identical to its own. Sprites without a digest map to themselves.
+	private int[] findCanonicalRecords(String[] digests)
+	{
+		int canonical[] = new int[digests.length];
+		Map<String, Integer> recordOwners = new HashMap<>();
+		
+		for(int i = 0; i < canonical.length; i++)
+		{
+			canonical[i] = i;
+			
+			if(m_deduplicationMode == DeduplicationMode.NONE || digests[i] == null)
+				continue;
+			
+			Integer owner = recordOwners.get(digests[i]);
+			
+			if(owner == null)
+				recordOwners.put(digests[i], i);
+			else
+				canonical[i] = owner;
+		}
+		
+		return canonical;
+	}
+	
+	//Finds the canonical sprites that a previous run already extracted from identical records.
+	private boolean[] findUpToDate(SpkArchive spk, String[] digests, int[] canonical, DumpJournal journal)
+	{
+		boolean upToDate[] = new boolean[digests.length];
+		
+		for(int i = 0; i < digests.length; i++)
+			upToDate[i] = canonical[i] == i && digests[i] != null && journal.isUpToDate(i, digests[i]);
+		
+		if(m_deduplicationMode == DeduplicationMode.PIXELS)
+		{
+			//A sprite that refers to the file of another sprite with the same pixels is only up to date if that file still holds those pixels.
+			Map<String, String> fileContents = new HashMap<>();
+			
+			for(int i = 0; i < digests.length; i++)
+			{
+				DumpJournal.Entry entry = journal.get(i);
+				String name = generateArtifactName(i, spk.getOrigin(i));
+				
+				if(upToDate[i] && entry.getContent() != null && entry.getOutputs().equals(Collections.singletonList(name)))
+					fileContents.put(name, entry.getContent());
+			}
+			
+			for(int i = 0; i < digests.length; i++)
+			{
+				DumpJournal.Entry entry = journal.get(i);
+				
+				if(upToDate[i] && entry.getOutputs().size() == 1 && (entry.getContent() == null || !entry.getContent().equals(fileContents.get(entry.getOutputs().get(0)))))
+					upToDate[i] = false;
+			}
+		}
+		
+		return upToDate;
+	}
+	
+	//Hands each raster that a previous run already wrote to the lowest up to date sprite holding it, so pending sprites with the same
+	//pixels are not encoded again.
+	private void seedRasterClaims(List<Integer> sprites, boolean[] upToDate, DumpState state)
+	{
+		List<Integer> indices = new ArrayList<>(sprites);
+		Collections.sort(indices);
+		
+		for(int i : indices)
 		{
-			try(RandomAccessFile spk = new RandomAccessFile(m_sourcePkFile, "r"))
+			if(!upToDate[i] || state.m_files[i] == null)
+				continue;
+			
+			state.m_rasterDigests[i] = state.m_journal.get(i).getContent();
+			
+			if(state.m_rasterDigests[i] != null)
+				state.m_rasterClaims.putIfAbsent(state.m_rasterDigests[i], i);
+		}
+	}
+	
+	private void moveOutput(String from, String to) throws IOException
+	{
+		Files.move(new File(m_destinationDirectory.resolve("./" + from)).toPath(), new File(m_destinationDirectory.resolve("./" + to)).toPath(), StandardCopyOption.REPLACE_EXISTING);
+		
+		File sidecar = new File(m_destinationDirectory.resolve(String.format("./%s%s", from, ImageEncoder.SIDECAR_SUFFIX)));
+		
+		if(sidecar.isFile())
+			Files.move(sidecar.toPath(), new File(m_destinationDirectory.resolve(String.format("./%s%s", to, ImageEncoder.SIDECAR_SUFFIX))).toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+	
+	//Whichever sprite claimed a raster first wrote it, which depends on how threads were scheduled. Once every raster is known, the file
+	//is renamed after the lowest selected index holding those pixels and every sprite with them is pointed at it, so the same sprites
+	//always own the same files. Sprites are only pointed at a file that was written, those whose claimant failed are extracted again
+	//by the next run.
+	private void settleRasterOwners(SpkArchive spk, List<Integer> sprites, String[] digests, boolean[] upToDate, DumpState state)
+	{
+		List<Integer> indices = new ArrayList<>(sprites);
+		Map<String, List<Integer>> rasters = new LinkedHashMap<>();
+		
+		Collections.sort(indices);
+		
+		for(int i : indices)
+		{
+			String raster = state.m_rasterDigests[i];
+			
+			if(raster == null)
+				continue;
+			
+			List<Integer> holders = rasters.get(raster);
+			
+			if(holders == null)
 			{
-				for(int i = 0; i < pkIndices.length; i++)
+				holders = new ArrayList<>();
+				rasters.put(raster, holders);
+			}
+			
+			holders.add(i);
+		}
+		
+		for(Map.Entry<String, List<Integer>> e : rasters.entrySet())
+		{
+			int claimant = state.m_rasterClaims.get(e.getKey());
+			int owner = e.getValue().get(0);
+			String file = state.m_files[claimant];
+			
+			if(file == null)
+			{
+				for(int i : e.getValue())
 				{
-					spk.getChannel().position(pkIndices[i]);
-					
-					try
-					{
-						BufferedImage src = extract(Channels.newInputStream(spk.getChannel()));
-						if(src != null)
-						{
-							if(!ImageIO.write(src, OUTPUT_IMAGE_FORMAT, new File(m_destinationDirectory.resolve(String.format("./%s", generateArtifactName(i, pkIndices[i]))))))
-							{
-								m_logger.error("Unable to find approriate writer for " + OUTPUT_IMAGE_FORMAT + ". Terminating.");
-								break;
-							}
-						}
-					} catch (IOException e)
-					{
-						m_logger.error(String.format("Unable to extract artifact at index %d at origin %d. Skipping artifact.", i, pkIndices[i]), e);
-					}
+					if(i != claimant)
+						m_logger.error(String.format("Unable to extract artifact at index %d at origin %d, the artifact at index %d it shares its pixels with was not extracted. Skipping artifact.", i, spk.getOrigin(i), claimant));
 				}
-			} catch (IOException e)
+				
+				continue;
+			}
+			
+			String ownerFile = generateArtifactName(owner, spk.getOrigin(owner));
+			
+			if(!file.equals(ownerFile))
+			{
+				try
+				{
+					moveOutput(file, ownerFile);
+					file = ownerFile;
+				} catch (IOException ex)
+				{
+					m_logger.error(String.format("Unable to rename %s after the artifact at index %d, which shares its pixels. It is left under its current name.", file, owner), ex);
+				}
+			}
+			
+			for(int i : e.getValue())
+			{
+				if(file.equals(state.m_files[i]))
+					continue;
+				
+				if(!upToDate[i] && state.m_files[i] == null)
+					state.m_metrics.addCompletedItems(1);
+				
+				state.m_files[i] = file;
+				
+				try
+				{
+					if(digests[i] != null)
+						state.m_journal.record(i, spk.getOrigin(i), digests[i], e.getKey(), Collections.singletonList(file));
+				} catch (IOException ex)
+				{
+					m_logger.error(String.format("Unable to journal artifact at index %d at origin %d. It will be extracted again by the next run.", i, spk.getOrigin(i)), ex);
+				}
+			}
+		}
+	}
+	
+	private boolean dump(SpkArchive spk, DumpJournal journal)
+	{
+		ExtractionMetrics metrics = new ExtractionMetrics(SpkDumper.class.getSimpleName(), "sprites");
+		boolean completed;
+		
+		try
+		{
+			try
+			{
+				metrics.register();
+			} catch (JMException e)
 			{
-				m_logger.error("Error encountered extracting graphic images. Terminating extraction operation.", e);
+				m_logger.warn("Unable to register extraction metrics with JMX, they will only be logged once the extraction completes.", e);
 			}
+			
+			completed = dump(spk, journal, metrics);
+		} finally
+		{
+			metrics.close();
 		}
 		
-		m_logger.info("Done");
+		metrics.logSummary(m_logger);
+		
+		return completed;
+	}
+	
+	private boolean dump(SpkArchive spk, DumpJournal journal, ExtractionMetrics metrics)
+	{
+		List<Integer> sprites = selectSprites(spk);
+		
+		m_logger.info("Hashing compressed sprite records...");
+		String digests[] = digestRecords(spk, sprites, metrics);
+		int canonical[] = findCanonicalRecords(digests);
+		
+		DumpState state = new DumpState(spk.size(), m_deduplicationMode == DeduplicationMode.PIXELS, journal, metrics);
+		boolean upToDate[] = findUpToDate(spk, digests, canonical, journal);
+		
+		List<Integer> pending = new ArrayList<>();
+		int skipped = 0;
+		
+		for(int i : sprites)
+		{
+			if(upToDate[i])
+			{
+				List<String> outputs = journal.get(i).getOutputs();
+				state.m_files[i] = outputs.isEmpty() ? null : outputs.get(0);
+				skipped++;
+			}
+			else if(canonical[i] == i)
+				pending.add(i);
+		}
+		
+		if(skipped > 0)
+			m_logger.info(String.format("Skipping %d graphic images that are already up to date.", skipped));
+		
+		try
+		{
+			if(state.m_rasterClaims != null)
+				seedRasterClaims(sprites, upToDate, state);
+			
+			StagedPipeline.Source<SpriteWork> source = metrics.instrumentSource("read", new RecordSource(spk, pending, digests, metrics));
+			StagedPipeline<SpriteWork> pipeline = new StagedPipeline<SpriteWork>(PIPELINE_QUEUE_CAPACITY)
+					.addStage("spk-decode", m_workerThreads, metrics.instrumentStage("decode", new DecodeStage(state)))
+					.addStage("spk-encode", m_workerThreads, metrics.instrumentStage("encode", new EncodeStage()));
+			
+			pipeline.run(source, "spk-write", WRITE_BATCH_SIZE, metrics.instrumentSink("write", new WriteSink(state)));
+			
+			if(state.m_rasterClaims != null)
+				settleRasterOwners(spk, sprites, digests, upToDate, state);
+			
+			if(m_deduplicationMode != DeduplicationMode.NONE)
+				writeManifest(spk, sprites, canonical, state.m_files);
+			
+			return true;
+		} catch (ExecutionException e)
+		{
+			m_logger.error("Error encountered extracting graphic images. Terminating extraction operation.", e.getCause());
+		} catch (InterruptedException e)
+		{
+			m_logger.error("Interrupted while waiting for graphic images to be extracted. Terminating extraction operation.", e);
+			Thread.currentThread().interrupt();
+		}
+		
+		return false;
+	}
+	
+	//Fields are written in the order the HashMaps the manifest used to be serialized from iterated in, so existing manifests are reproduced exactly.
+	//Only the extracted sprites are listed, in the order of their indices.
+	private void writeManifest(SpkArchive spk, List<Integer> sprites, int[] canonical, String[] files)
+	{
+		Set<String> uniqueFiles = new HashSet<>();
+		List<Integer> indices = new ArrayList<>(sprites);
+		Collections.sort(indices);
+		
+		try(JsonGenerator generator = JSON_FACTORY.createJsonGenerator(new File(m_destinationDirectory.resolve("./" + MANIFEST_NAME)), JsonEncoding.UTF8))
+		{
+			generator.useDefaultPrettyPrinter();
+			
+			generator.writeStartObject();
+			generator.writeStringField("dedupe", m_deduplicationMode.getName());
+			generator.writeArrayFieldStart("sprites");
+			
+			for(int i : indices)
+			{
+				String file = files[canonical[i]];
+				
+				generator.writeStartObject();
+				
+				if(file == null)
+					generator.writeNullField("file");
+				else
+				{
+					generator.writeStringField("file", file);
+					uniqueFiles.add(file);
+				}
+				
+				generator.writeNumberField("origin", spk.getOrigin(i));
+				generator.writeNumberField("index", i);
+				generator.writeEndObject();
+			}
+			
+			generator.writeEndArray();
+			generator.writeEndObject();
+		} catch (IOException e)
+		{
+			m_logger.error("Unable to write deduplication manifest.", e);
+			return;
+		}
+		
+		m_logger.info(String.format("Wrote %d unique graphic images for %d artifacts.", uniqueFiles.size(), indices.size()));
 	}
 
 	private String generateArtifactName(int pkiIndex, long origin)
 	{
-		return String.format("texture_%d_%08X.%s", pkiIndex, origin, OUTPUT_IMAGE_FORMAT);
+		return String.format("texture_%d_%08X.%s", pkiIndex, origin, m_imageEncoder.getFormatName());
 	}
 
-	private BufferedImage extract(InputStream artifactSource) throws IOException
+	//State shared by the stages of a single dump.
+	private static final class DumpState
 	{
-		return m_extractor.extract(artifactSource);
+		//Written by the sink as sprites are completed and only read once the pipeline has finished.
+		private final String[] m_files;
+		//Raster digest of every sprite by index, and the sprite that claimed each raster and so is the only one to encode it.
+		//Only present when deduplicating by pixels. Each raster is claimed once, the digests are only read once the pipeline has finished.
+		@Nullable
+		private final String[] m_rasterDigests;
+		@Nullable
+		private final ConcurrentMap<String, Integer> m_rasterClaims;
+		private final DumpJournal m_journal;
+		private final ExtractionMetrics m_metrics;
+		
+		public DumpState(int sprites, boolean deduplicatePixels, DumpJournal journal, ExtractionMetrics metrics)
+		{
+			m_files = new String[sprites];
+			m_rasterDigests = deduplicatePixels ? new String[sprites] : null;
+			m_rasterClaims = deduplicatePixels ? new ConcurrentHashMap<String, Integer>() : null;
+			m_journal = journal;
+			m_metrics = metrics;
+		}
 	}
 	
-	public static void main(String[] args)
+	//A sprite on its way through the pipeline. Each stage releases what the following stages no longer need.
+	private static final class SpriteWork
+	{
+		private final int m_pkiIndex;
+		private final long m_origin;
+		@Nullable
+		private final String m_recordDigest;
+		
+		//Null for records that describe an empty sprite, which pass through the pipeline without an image or a file.
+		@Nullable
+		private byte[] m_record;
+		private BufferedImage m_image;
+		private String m_file;
+		//Encoded image, only present if this sprite's file still has to be written.
+		private byte[] m_encoded;
+		//Written next to the encoded image, only present if the output format needs one.
+		@Nullable
+		private byte[] m_sidecar;
+		
+		public SpriteWork(int pkiIndex, long origin, @Nullable String recordDigest, @Nullable byte[] record)
+		{
+			m_pkiIndex = pkiIndex;
+			m_origin = origin;
+			m_recordDigest = recordDigest;
+			m_record = record;
+		}
+	}
+	
+	private final class RecordSource implements StagedPipeline.Source<SpriteWork>
+	{
+		private final SpkArchive m_spk;
+		private final List<Integer> m_pending;
+		private final String[] m_recordDigests;
+		private final ExtractionMetrics m_metrics;
+		private int m_next = 0;
+		
+		public RecordSource(SpkArchive spk, List<Integer> pending, String[] recordDigests, ExtractionMetrics metrics)
+		{
+			m_spk = spk;
+			m_pending = pending;
+			m_recordDigests = recordDigests;
+			m_metrics = metrics;
+		}
+		
+		@Override
+		@Nullable
+		public SpriteWork next()
+		{
+			while(m_next < m_pending.size())
+			{
+				int index = m_pending.get(m_next++);
+				
+				try
+				{
+					//Records without dimensions describe no image, so no file is written for them and the manifest lists them without one.
+					Dimension dimensions = m_spk.getDimensions(index);
+					
+					if(dimensions.width == 0 || dimensions.height == 0)
+						return new SpriteWork(index, m_spk.getOrigin(index), m_recordDigests[index], null);
+					
+					ByteBuffer source = m_spk.getRecordBytes(index);
+					byte record[] = new byte[source.remaining()];
+					source.get(record);
+					m_metrics.addBytesRead(record.length);
+					
+					return new SpriteWork(index, m_spk.getOrigin(index), m_recordDigests[index], record);
+				} catch (IOException e)
+				{
+					m_logger.error(String.format("Unable to extract artifact at index %d at origin %d. Skipping artifact.", index, m_spk.getOrigin(index)), e);
+				}
+			}
+			
+			return null;
+		}
+	}
+	
+	private final class DecodeStage implements StagedPipeline.Stage<SpriteWork>
 	{
-		m_logger.info("[spk source] [spki source] [destination directory] [copy fill pattern = 01 for spk, = 011 for ispk]");
+		private final PkSpriteExtractor m_extractor = new PkSpriteExtractor(m_copyFillPattern);
+		private final DumpState m_state;
 		
-		if(args.length < 4)
-			m_logger.error("Insufficient arguments provided to run spk dump operation");
-		else
+		public DecodeStage(DumpState state)
 		{
-			String copyFillPattern = args[3];
+			m_state = state;
+		}
+		
+		@Override
+		public boolean process(SpriteWork work)
+		{
+			if(work.m_record == null)
+				return true;
 			
-			if(copyFillPattern.isEmpty())
-				m_logger.error("Invalid copy fill pattern supplied.");
-			else
+			try
+			{
+				work.m_image = m_extractor.extract(ByteBuffer.wrap(work.m_record));
+				work.m_record = null;
+			} catch (IOException e)
 			{
-				boolean copyFillPatternBuffer[] = new boolean[copyFillPattern.length()];
+				m_logger.error(String.format("Unable to extract artifact at index %d at origin %d. Skipping artifact.", work.m_pkiIndex, work.m_origin), e);
+				return false;
+			}
+			
+			//When deduplicating by pixels, only the first sprite to claim a raster encodes it. Which file the others refer to is settled
+			//once the pipeline has finished.
+			if(m_state.m_rasterClaims != null)
+			{
+				String raster = ContentDigest.digest(work.m_image);
+				m_state.m_rasterDigests[work.m_pkiIndex] = raster;
 				
-				for(int i = 0; i < copyFillPattern.length(); i++)
-					copyFillPatternBuffer[i] = copyFillPattern.charAt(i) == '1';
+				if(m_state.m_rasterClaims.putIfAbsent(raster, work.m_pkiIndex) != null)
+					return false;
+			}
+			
+			return true;
+		}
+	}
+	
+	private final class EncodeStage implements StagedPipeline.Stage<SpriteWork>
+	{
+		@Override
+		public boolean process(SpriteWork work)
+		{
+			if(work.m_image == null)
+				return true;
+			
+			try
+			{
+				ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+				m_imageEncoder.write(work.m_image, encoded);
 				
-				File f = new File(args[2]);
-				if(f.exists() && f.isDirectory())
-					new SpkDumper(new File(args[0]), new File(args[1]), f.toURI(), copyFillPatternBuffer).run();
-				else
-					m_logger.error("Destination argument must be a directory that already exists. Operation aborted. The provided destination argument was not valid.");
+				work.m_encoded = encoded.toByteArray();
+				work.m_sidecar = m_imageEncoder.createSidecar(work.m_image);
+				work.m_file = generateArtifactName(work.m_pkiIndex, work.m_origin);
+				work.m_image = null;
+			} catch (IOException e)
+			{
+				m_logger.error(String.format("Unable to extract artifact at index %d at origin %d. Skipping artifact.", work.m_pkiIndex, work.m_origin), e);
+				return false;
+			}
+			
+			return true;
+		}
+	}
+	
+	private final class WriteSink implements StagedPipeline.Sink<SpriteWork>
+	{
+		private final DumpState m_state;
+		
+		public WriteSink(DumpState state)
+		{
+			m_state = state;
+		}
+		
+		@Override
+		public void process(List<SpriteWork> batch)
+		{
+			for(SpriteWork work : batch)
+			{
+				try
+				{
+					if(work.m_encoded != null)
+					{
+						try(FileOutputStream fos = new FileOutputStream(new File(m_destinationDirectory.resolve(String.format("./%s", work.m_file)))))
+						{
+							fos.write(work.m_encoded);
+						}
+						
+						m_state.m_metrics.addBytesWritten(work.m_encoded.length);
+						
+						if(work.m_sidecar != null)
+						{
+							try(FileOutputStream fos = new FileOutputStream(new File(m_destinationDirectory.resolve(String.format("./%s%s", work.m_file, ImageEncoder.SIDECAR_SUFFIX)))))
+							{
+								fos.write(work.m_sidecar);
+							}
+							
+							m_state.m_metrics.addBytesWritten(work.m_sidecar.length);
+						}
+					}
+					
+					m_state.m_files[work.m_pkiIndex] = work.m_file;
+					
+					if(work.m_recordDigest != null)
+						m_state.m_journal.record(work.m_pkiIndex, work.m_origin, work.m_recordDigest, m_state.m_rasterDigests == null ? null : m_state.m_rasterDigests[work.m_pkiIndex], work.m_file == null ? Collections.<String>emptyList() : Collections.singletonList(work.m_file));
+					
+					m_state.m_metrics.addCompletedItems(1);
+				} catch (IOException e)
+				{
+					m_logger.error(String.format("Unable to extract artifact at index %d at origin %d. Skipping artifact.", work.m_pkiIndex, work.m_origin), e);
+				}
+			}
+		}
+	}
+	
+	public enum DeduplicationMode
+	{
+		//Every sprite is written to its own file.
+		NONE("none"),
+		//Sprites with byte-identical compressed records are written once.
+		RECORD("record"),
+		//As with RECORD, and additionally sprites that decode to identical pixels are written once.
+		PIXELS("pixels");
+		
+		private final String m_name;
+		
+		private DeduplicationMode(String name)
+		{
+			m_name = name;
+		}
+		
+		public String getName()
+		{
+			return m_name;
+		}
+		
+		@Nullable
+		public static DeduplicationMode fromName(String name)
+		{
+			for(DeduplicationMode mode : values())
+			{
+				if(mode.m_name.equals(name.toLowerCase(Locale.ROOT)))
+					return mode;
 			}
+			
+			return null;
+		}
+	}
+	
+	//Builds a dumper from the arguments main accepts, checking them the same way.
+	static SpkDumper fromArguments(CommandLineArguments arguments) throws InvalidArgumentException
+	{
+		if(arguments.getPositionalCount() < 4)
+			throw new InvalidArgumentException("Insufficient arguments provided to run spk dump operation.");
+		
+		String copyFillPattern = arguments.getPositional(3);
+		
+		if(copyFillPattern.isEmpty())
+			throw new InvalidArgumentException("Invalid copy fill pattern supplied.");
+		
+		boolean copyFillPatternBuffer[] = new boolean[copyFillPattern.length()];
+		
+		for(int i = 0; i < copyFillPattern.length(); i++)
+			copyFillPatternBuffer[i] = copyFillPattern.charAt(i) == '1';
+		
+		int workerThreads = arguments.getIntOption("threads", Runtime.getRuntime().availableProcessors());
+		int pngLevel = arguments.getIntOption("png-level", PngEncoder.DEFAULT_COMPRESSION_LEVEL);
+		ImageEncoder imageEncoder = ImageFormats.create(arguments.getOption("format", ImageFormats.DEFAULT_FORMAT), pngLevel);
+		DeduplicationMode deduplicationMode = DeduplicationMode.fromName(arguments.getOption("dedupe", DeduplicationMode.NONE.getName()));
+		IndexSelection indices = arguments.getIndexSelectionOption("indices");
+		
+		if(workerThreads <= 0)
+			throw new InvalidArgumentException("At least one worker thread is required.");
+		
+		if(pngLevel < 0 || pngLevel > 9)
+			throw new InvalidArgumentException("PNG compression level must be between 0 and 9.");
+		
+		if(imageEncoder == null)
+			throw new InvalidArgumentException("Output format must be one of " + ImageFormats.FORMAT_NAMES + ".");
+		
+		if(deduplicationMode == null)
+			throw new InvalidArgumentException("Deduplication mode must be one of none, record or pixels.");
+		
+		File f = new File(arguments.getPositional(2));
+		
+		if(!f.isDirectory())
+			throw new InvalidArgumentException("Destination argument must be a directory that already exists. The provided destination argument was not valid.");
+		
+		return new SpkDumper(new File(arguments.getPositional(0)), new File(arguments.getPositional(1)), f.toURI(), copyFillPatternBuffer, workerThreads, imageEncoder, deduplicationMode, arguments.hasOption("rebuild"), indices);
+	}
+	
+	public static void main(String[] args)
+	{
+		m_logger.info("[spk source] [spki source] [destination directory] [copy fill pattern = 01 for spk, = 011 for ispk] [--threads=worker threads for each of the decode and encode stages, defaults to the number of available processors] [--png-level=png compression level from 0 (fastest) to 9 (smallest), defaults to " + PngEncoder.DEFAULT_COMPRESSION_LEVEL + "] [--format=output image format, one of " + ImageFormats.FORMAT_NAMES + ", raw rgba and rgb565 pixels are described by a .json sidecar next to each file, defaults to " + ImageFormats.DEFAULT_FORMAT + "] [--dedupe=none, record (write byte-identical records once) or pixels (also write identical images once), a manifest.json mapping every index to its file is written unless none, defaults to none] [--rebuild (extract everything, even sprites a previous run into the destination already extracted)] [--indices=sprite indices and ranges to extract, such as 120-180,200, only their records are read, defaults to every sprite]");
+		
+		try
+		{
+			fromArguments(new CommandLineArguments(args)).run();
+		} catch (InvalidArgumentException e)
+		{
+			m_logger.error(e.getMessage() + " Operation aborted.");
 		}
 	}
 }
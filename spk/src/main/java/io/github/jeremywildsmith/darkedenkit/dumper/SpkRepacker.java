@@ -0,0 +1,273 @@
+package io.github.jeremywildsmith.darkedenkit.dumper;
+
+import io.github.jeremywildsmith.darkedenkit.dumper.CommandLineArguments.InvalidArgumentException;
+import io.github.jeremywildsmith.darkedenkit.dumper.pk.PkSpriteEncoder;
+import io.github.jeremywildsmith.darkedenkit.dumper.pk.SpkWriter;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.imageio.ImageIO;
+
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+//Encodes a directory of images back into an spk/spki pair. Images are named by their spki index, either as <index>.png or
+//with the texture_<index>_<origin>.png names produced by SpkDumper. Indices without an image are written as empty records.
+//SpkDumper writes no image for empty records. Directories SpkDumper deduplicated are read through their manifest, since several
+//indices share one file there, which also keeps empty records after the last image. Only png images can be packed, directories
+//holding images SpkDumper wrote in any other format are refused.
+public final class SpkRepacker implements Runnable
+{
+	private static final Pattern SOURCE_IMAGE_NAME = Pattern.compile("^(?:texture_)?(\\d+)(?:_[0-9A-Fa-f]{8})?\\.(\\w+)$");
+	private static final String SOURCE_IMAGE_FORMAT = "png";
+	
+	private static final Logger m_logger = LoggerFactory.getLogger(SpkRepacker.class);
+	
+	private final File m_sourceDirectory;
+	private final File m_destinationPkFile;
+	private final File m_destinationPkiFile;
+	private final PkSpriteEncoder m_encoder;
+	private final int m_workerThreads;
+	
+	public SpkRepacker(File sourceDirectory, File destinationPkFile, File destinationPkiFile, boolean[] spkCopyFillPattern, int workerThreads)
+	{
+		if(workerThreads <= 0)
+			throw new IllegalArgumentException("At least one worker thread is required.");
+		
+		m_sourceDirectory = sourceDirectory;
+		m_destinationPkFile = destinationPkFile;
+		m_destinationPkiFile = destinationPkiFile;
+		m_encoder = new PkSpriteEncoder(spkCopyFillPattern);
+		m_workerThreads = workerThreads;
+	}
+	
+	//Indices are checked before any are used, so a stray file name can not grow the record list beyond what an spk can hold.
+	private static int parseIndex(String index, String source) throws IOException
+	{
+		//More digits than the largest index has could overflow an int.
+		if(index.length() > Integer.toString(SpkWriter.MAX_RECORDS).length() || Integer.parseInt(index) >= SpkWriter.MAX_RECORDS)
+			throw new IOException(String.format("%s claims spki index %s, but SPK documents can hold at most %d records.", source, index, SpkWriter.MAX_RECORDS));
+		
+		return Integer.parseInt(index);
+	}
+	
+	private static void claim(List<File> images, int index, File image) throws IOException
+	{
+		while(images.size() <= index)
+			images.add(null);
+		
+		if(images.get(index) != null)
+			throw new IOException(String.format("Both %s and %s claim spki index %d.", images.get(index).getName(), image.getName(), index));
+		
+		images.set(index, image);
+	}
+	
+	private File[] gatherSourceImages() throws IOException
+	{
+		File manifest = new File(m_sourceDirectory, SpkDumper.MANIFEST_NAME);
+		
+		if(manifest.isFile())
+			return gatherManifestImages(manifest);
+		
+		File candidates[] = m_sourceDirectory.listFiles();
+		
+		if(candidates == null)
+			throw new IOException("Unable to list contents of source directory.");
+		
+		//Sorted so that the same directory always produces the same errors.
+		Arrays.sort(candidates);
+		List<File> images = new ArrayList<>();
+		
+		for(File f : candidates)
+		{
+			Matcher m = SOURCE_IMAGE_NAME.matcher(f.getName());
+			
+			if(!f.isFile() || !m.matches())
+				continue;
+			
+			if(!m.group(2).toLowerCase(Locale.ROOT).equals(SOURCE_IMAGE_FORMAT))
+				throw new IOException(String.format("%s is not a png image. Only directories of png images can be packed.", f.getName()));
+			
+			claim(images, parseIndex(m.group(1), f.getName()), f);
+		}
+		
+		return images.toArray(new File[images.size()]);
+	}
+	
+	//Sprites the manifest lists without a file had no image when they were extracted and are written as empty records.
+	private File[] gatherManifestImages(File manifest) throws IOException
+	{
+		JsonNode sprites = new ObjectMapper().readTree(manifest).get("sprites");
+		
+		if(sprites == null || !sprites.isArray())
+			throw new IOException(String.format("%s does not list any sprites.", manifest.getName()));
+		
+		List<File> images = new ArrayList<>();
+		
+		for(JsonNode sprite : sprites)
+		{
+			JsonNode index = sprite.get("index");
+			JsonNode file = sprite.get("file");
+			
+			if(index == null || !index.isInt() || index.getIntValue() < 0 || file == null)
+				throw new IOException(String.format("%s lists a sprite without an index or file.", manifest.getName()));
+			
+			int spki = parseIndex(index.asText(), manifest.getName());
+			
+			if(file.isNull())
+			{
+				while(images.size() <= spki)
+					images.add(null);
+				
+				continue;
+			}
+			
+			String name = file.asText();
+			
+			if(!name.toLowerCase(Locale.ROOT).endsWith("." + SOURCE_IMAGE_FORMAT))
+				throw new IOException(String.format("%s refers to %s, which is not a png image. Only directories of png images can be packed.", manifest.getName(), name));
+			
+			File image = new File(m_sourceDirectory, name);
+			
+			if(!image.isFile())
+				throw new IOException(String.format("%s refers to %s for spki index %d, which does not exist.", manifest.getName(), name, spki));
+			
+			//Deduplicated sprites share their file, so unlike with image names the same file is claimed by several indices.
+			claim(images, spki, image);
+		}
+		
+		return images.toArray(new File[images.size()]);
+	}
+	
+	@Override
+	public final void run()
+	{
+		ExecutorService workers = Executors.newFixedThreadPool(m_workerThreads);
+		
+		try
+		{
+			File sources[] = gatherSourceImages();
+			
+			if(sources.length == 0)
+				m_logger.info("No source images found. There is nothing to pack.");
+			else
+			{
+				List<Future<byte[]>> encodedRecords = new ArrayList<>();
+				
+				for(File source : sources)
+					encodedRecords.add(workers.submit(new SpriteEncodeTask(source)));
+				
+				//Records are encoded out of order, but are collected and written in index order.
+				List<byte[]> records = new ArrayList<>();
+				
+				for(int i = 0; i < encodedRecords.size(); i++)
+				{
+					try
+					{
+						records.add(encodedRecords.get(i).get());
+					} catch (ExecutionException e)
+					{
+						throw new IOException(String.format("Unable to encode image for spki index %d.", i), e.getCause());
+					}
+				}
+				
+				new SpkWriter().write(records, m_destinationPkFile, m_destinationPkiFile);
+				m_logger.info(String.format("Packed %d records.", records.size()));
+			}
+		} catch (IOException e)
+		{
+			m_logger.error("Error encountered packing graphic images. Terminating pack operation.", e);
+		} catch (InterruptedException e)
+		{
+			m_logger.error("Interrupted while waiting for graphic images to be encoded. Terminating pack operation.", e);
+			Thread.currentThread().interrupt();
+		} finally
+		{
+			workers.shutdownNow();
+		}
+		
+		m_logger.info("Done");
+	}
+	
+	private final class SpriteEncodeTask implements Callable<byte[]>
+	{
+		private final File m_source;
+		
+		public SpriteEncodeTask(File source)
+		{
+			m_source = source;
+		}
+		
+		@Override
+		public byte[] call() throws IOException
+		{
+			if(m_source == null)
+				return m_encoder.encodeEmpty();
+			
+			BufferedImage image = ImageIO.read(m_source);
+			
+			if(image == null)
+				throw new IOException(String.format("No image reader is able to read %s.", m_source.getName()));
+			
+			return m_encoder.encode(image);
+		}
+	}
+	
+	public static void main(String[] args)
+	{
+		m_logger.info("[source directory] [spk destination] [spki destination] [copy fill pattern = 01 for spk, = 011 for ispk] [--threads=worker threads, defaults to the number of available processors]");
+		
+		CommandLineArguments arguments = new CommandLineArguments(args);
+		
+		if(arguments.getPositionalCount() < 4)
+			m_logger.error("Insufficient arguments provided to run spk pack operation");
+		else
+		{
+			String copyFillPattern = arguments.getPositional(3);
+			
+			if(copyFillPattern.isEmpty())
+				m_logger.error("Invalid copy fill pattern supplied.");
+			else
+			{
+				boolean copyFillPatternBuffer[] = new boolean[copyFillPattern.length()];
+				
+				for(int i = 0; i < copyFillPattern.length(); i++)
+					copyFillPatternBuffer[i] = copyFillPattern.charAt(i) == '1';
+				
+				try
+				{
+					int workerThreads = arguments.getIntOption("threads", Runtime.getRuntime().availableProcessors());
+					
+					File f = new File(arguments.getPositional(0));
+					if(workerThreads <= 0)
+						m_logger.error("At least one worker thread is required. Operation aborted.");
+					else if(f.isDirectory())
+						new SpkRepacker(f, new File(arguments.getPositional(1)), new File(arguments.getPositional(2)), copyFillPatternBuffer, workerThreads).run();
+					else
+						m_logger.error("Source argument must be a directory that already exists. Operation aborted. The provided source argument was not valid.");
+				} catch (InvalidArgumentException e)
+				{
+					m_logger.error(e.getMessage() + " Operation aborted.");
+				} catch (IllegalArgumentException e)
+				{
+					m_logger.error(e.getMessage() + " Operation aborted.");
+				}
+			}
+		}
+	}
+}
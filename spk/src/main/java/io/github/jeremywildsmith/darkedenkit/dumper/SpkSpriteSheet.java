@@ -0,0 +1,131 @@
+package io.github.jeremywildsmith.darkedenkit.dumper;
+
+import io.github.jeremywildsmith.darkedenkit.ImageUtils;
+import io.github.jeremywildsmith.darkedenkit.MaxRectsPacker;
+import io.github.jeremywildsmith.darkedenkit.MaxRectsPacker.Packing;
+import io.github.jeremywildsmith.darkedenkit.Nullable;
+import io.github.jeremywildsmith.darkedenkit.Rect2D;
+import io.github.jeremywildsmith.darkedenkit.dumper.pk.SpkSpriteCache;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//The sprites of an animation packed onto one or more pages, along with where each spki ended up.
+final class SpkSpriteSheet
+{
+	private final BufferedImage[] m_pages;
+	private final Map<Integer, Rect2D> m_spkiMapping;
+	private final Map<Integer, Integer> m_spkiPages;
+
+	private SpkSpriteSheet(BufferedImage[] pages, Map<Integer, Rect2D> spkiMapping, Map<Integer, Integer> spkiPages)
+	{
+		m_pages = pages;
+		m_spkiMapping = spkiMapping;
+		m_spkiPages = spkiPages;
+	}
+
+	//Returns null if none of the sprites have anything to render.
+	@Nullable
+	public static SpkSpriteSheet compile(final SpkSpriteCache spk, final int[] includedSpks, MaxRectsPacker packer) throws IOException
+	{
+		List<Integer> spki = new ArrayList<>();
+		List<BufferedImage> frames = new ArrayList<>();
+
+		//Sprites are decoded in the order of their records in the spk, so reads of the mapped archive move forward through it.
+		//They are still packed in the order given, which keeps the layout of the pages independent of where the records are stored.
+		Integer decodeOrder[] = new Integer[includedSpks.length];
+
+		for(int i = 0; i < decodeOrder.length; i++)
+			decodeOrder[i] = i;
+
+		Arrays.sort(decodeOrder, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b)
+			{
+				return Long.compare(spk.getOrigin(includedSpks[a]), spk.getOrigin(includedSpks[b]));
+			}
+		});
+
+		BufferedImage decoded[] = new BufferedImage[includedSpks.length];
+
+		for(int i : decodeOrder)
+			decoded[i] = spk.get(includedSpks[i]);
+
+		for(int i = 0; i < includedSpks.length; i++)
+		{
+			if(decoded[i] != null)
+			{
+				spki.add(includedSpks[i]);
+				frames.add(decoded[i]);
+			}
+		}
+
+		if(frames.size() <= 0)
+			return null;
+
+		int widths[] = new int[frames.size()];
+		int heights[] = new int[frames.size()];
+
+		for(int i = 0; i < frames.size(); i++)
+		{
+			widths[i] = frames.get(i).getWidth();
+			heights[i] = frames.get(i).getHeight();
+		}
+
+		Packing packing = packer.pack(widths, heights);
+
+		BufferedImage pages[] = new BufferedImage[packing.getPageCount()];
+		for(int i = 0; i < pages.length; i++)
+			pages[i] = new BufferedImage(packing.getPageWidth(i), packing.getPageHeight(i), BufferedImage.TYPE_INT_ARGB);
+
+		Map<Integer, Rect2D> spritesheetFrames = new HashMap<>();
+		Map<Integer, Integer> spritesheetPages = new HashMap<>();
+
+		for(int i = 0; i < frames.size(); i++)
+		{
+			Rect2D region = packing.getRegion(i);
+
+			ImageUtils.copyArgb(frames.get(i), pages[packing.getPage(i)], region.x, region.y);
+			spritesheetFrames.put(spki.get(i), region);
+			spritesheetPages.put(spki.get(i), packing.getPage(i));
+		}
+
+		return new SpkSpriteSheet(pages, spritesheetFrames, spritesheetPages);
+	}
+
+	public Rect2D getRegion(int spki)
+	{
+		Rect2D mapping = m_spkiMapping.get(spki);
+
+		return mapping == null ? new Rect2D() : mapping;
+	}
+
+	public int getPage(int spki)
+	{
+		Integer page = m_spkiPages.get(spki);
+
+		return page == null ? 0 : page;
+	}
+
+	public int getPageCount()
+	{
+		return m_pages.length;
+	}
+
+	public BufferedImage getSpritesheet(int page)
+	{
+		return m_pages[page];
+	}
+
+	//Drops the page images once they have been encoded, the regions remain available.
+	public void releaseSpritesheets()
+	{
+		Arrays.fill(m_pages, null);
+	}
+}
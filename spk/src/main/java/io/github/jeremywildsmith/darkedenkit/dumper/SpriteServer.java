@@ -0,0 +1,490 @@
+package io.github.jeremywildsmith.darkedenkit.dumper;
+
+import io.github.jeremywildsmith.darkedenkit.ContentDigest;
+import io.github.jeremywildsmith.darkedenkit.MaxRectsPacker;
+import io.github.jeremywildsmith.darkedenkit.Nullable;
+import io.github.jeremywildsmith.darkedenkit.PngEncoder;
+import io.github.jeremywildsmith.darkedenkit.WeightedCache;
+import io.github.jeremywildsmith.darkedenkit.WeightedCache.Weigher;
+import io.github.jeremywildsmith.darkedenkit.dumper.CommandLineArguments.InvalidArgumentException;
+import io.github.jeremywildsmith.darkedenkit.dumper.pk.ArtifactTable.Artifact;
+import io.github.jeremywildsmith.darkedenkit.dumper.pk.ArtifactTable.ArtifactAnimation;
+import io.github.jeremywildsmith.darkedenkit.dumper.pk.CfpkArchive;
+import io.github.jeremywildsmith.darkedenkit.dumper.pk.PkIndexExtractor.PkiParseException;
+import io.github.jeremywildsmith.darkedenkit.dumper.pk.PkMetadataCache;
+import io.github.jeremywildsmith.darkedenkit.dumper.pk.SpkArchive;
+import io.github.jeremywildsmith.darkedenkit.dumper.pk.SpkSpriteCache;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+//Serves sprites and animation atlases over HTTP, decoding them from the archives when they are first requested:
+//    /sprite/{spki}.png                                   a single sprite
+//    /artifact/{artifact}/{animation}/atlas.png           the first page of an animation's spritesheet, as ArtifactAnimationDumper packs it
+//    /artifact/{artifact}/{animation}/atlas_{page}.png    any further pages
+//Animations are addressed by the names ArtifactAnimationDumper gives their directories. Encoded responses are kept in a cache bounded by
+//their size. Entity tags are derived from the offsets and digests of the records a response is generated from, so clients revalidating
+//a response they already hold are answered without decoding anything.
+public final class SpriteServer implements Closeable
+{
+	private static final int DEFAULT_PORT = 8080;
+	private static final String DEFAULT_BIND_ADDRESS = "127.0.0.1";
+	private static final int DEFAULT_SPRITE_CACHE_BUDGET_MB = 64;
+	private static final int DEFAULT_RESPONSE_CACHE_BUDGET_MB = 32;
+	private static final int DEFAULT_MAX_PAGE_SIZE = 2048;
+	private static final int DEFAULT_MAX_AGE_SECONDS = 60 * 60;
+	private static final long BYTES_PER_MB = 1024L * 1024L;
+
+	private static final Pattern SPRITE_ROUTE = Pattern.compile("/sprite/(\\d{1,9})\\.png");
+	private static final Pattern ATLAS_ROUTE = Pattern.compile("/artifact/(\\d{1,9})/([^/]+)/atlas(?:_(\\d{1,9}))?\\.png");
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final String PNG_CONTENT_TYPE = "image/png";
+	private static final String TEXT_CONTENT_TYPE = "text/plain; charset=utf-8";
+
+	private static final int STATUS_OK = 200;
+	private static final int STATUS_NOT_MODIFIED = 304;
+	private static final int STATUS_NOT_FOUND = 404;
+	private static final int STATUS_METHOD_NOT_ALLOWED = 405;
+	private static final int STATUS_INTERNAL_ERROR = 500;
+
+	//Length of the digest part of an entity tag. Entity tags only need to tell apart the versions of a single resource.
+	private static final int ENTITY_TAG_DIGEST_LENGTH = 32;
+
+	private static final Weigher<byte[]> RESPONSE_WEIGHER = new Weigher<byte[]>() {
+		@Override
+		public long weigh(byte[] value)
+		{
+			return value.length;
+		}
+	};
+
+	private static final Logger m_logger = LoggerFactory.getLogger(SpriteServer.class);
+
+	private final SpkArchive m_spk;
+	@Nullable
+	private final CfpkArchive m_cfpk;
+	private final SpkSpriteCache m_sprites;
+	private final PngEncoder m_imageEncoder;
+	private final MaxRectsPacker m_packer;
+	private final int m_maxAge;
+
+	//Keyed by request path. The archives do not change while they are served, so a path always produces the same response.
+	private final WeightedCache<String, byte[]> m_responses;
+	private final AtomicReferenceArray<String> m_recordDigests;
+
+	private final HttpServer m_server;
+	private final ExecutorService m_executor;
+
+	private SpriteServer(SpkArchive spk, @Nullable CfpkArchive cfpk, long spriteCacheBudget, long responseCacheBudget, PngEncoder imageEncoder, int maxPageSize, int maxAge, InetSocketAddress address, int workerThreads) throws IOException
+	{
+		m_spk = spk;
+		m_cfpk = cfpk;
+		m_sprites = new SpkSpriteCache(spk, spriteCacheBudget);
+		m_imageEncoder = imageEncoder;
+		m_packer = new MaxRectsPacker(maxPageSize, maxPageSize);
+		m_maxAge = maxAge;
+		m_responses = new WeightedCache<>(responseCacheBudget, RESPONSE_WEIGHER);
+		m_recordDigests = new AtomicReferenceArray<>(spk.size());
+
+		m_executor = Executors.newFixedThreadPool(workerThreads);
+		m_server = HttpServer.create(address, 0);
+		m_server.createContext("/", new RequestHandler());
+		m_server.setExecutor(m_executor);
+	}
+
+	public void start()
+	{
+		m_server.start();
+		m_logger.info(String.format("Serving %d sprites and %d artifacts on http://%s:%d/", m_spk.size(), m_cfpk == null ? 0 : m_cfpk.size(),
+										m_server.getAddress().getHostString(), m_server.getAddress().getPort()));
+	}
+
+	@Override
+	public void close()
+	{
+		m_server.stop(0);
+		m_executor.shutdown();
+
+		m_spk.close();
+
+		if(m_cfpk != null)
+			m_cfpk.close();
+
+		m_logger.info(String.format("Response cache: %d hits, %d misses, %d evictions. Sprite cache: %d hits, %d misses, %d evictions.",
+										m_responses.getHits(), m_responses.getMisses(), m_responses.getEvictions(),
+										m_sprites.getHits(), m_sprites.getMisses(), m_sprites.getEvictions()));
+	}
+
+	//Everything besides the archives that affects the bytes served, so restarting with other settings changes every entity tag.
+	private String getConfiguration()
+	{
+		return String.format("png-level=%d max-page-size=%d", m_imageEncoder.getCompressionLevel(), m_packer.getMaxPageWidth());
+	}
+
+	private String getRecordDigest(int spki) throws IOException
+	{
+		String digest = m_recordDigests.get(spki);
+
+		if(digest == null)
+		{
+			digest = ContentDigest.digest(m_spk.getRecordBytes(spki));
+			m_recordDigests.set(spki, digest);
+		}
+
+		return digest;
+	}
+
+	private String createEntityTag(long offset, String contents)
+	{
+		String digest = ContentDigest.digest(ByteBuffer.wrap((getConfiguration() + "\n" + contents).getBytes(UTF8)));
+
+		return String.format("\"%x-%s\"", offset, digest.substring(0, ENTITY_TAG_DIGEST_LENGTH));
+	}
+
+	private byte[] encode(BufferedImage image) throws IOException
+	{
+		ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+		m_imageEncoder.write(image, encoded);
+
+		return encoded.toByteArray();
+	}
+
+	//Returns null if the path does not name anything that exists in the archives.
+	@Nullable
+	private Resource resolve(String path) throws IOException
+	{
+		Matcher sprite = SPRITE_ROUTE.matcher(path);
+
+		if(sprite.matches())
+		{
+			int spki = Integer.parseInt(sprite.group(1));
+
+			return spki < m_spk.size() ? new SpriteResource(spki) : null;
+		}
+
+		Matcher atlas = ATLAS_ROUTE.matcher(path);
+
+		if(atlas.matches() && m_cfpk != null)
+		{
+			int artifactIndex = Integer.parseInt(atlas.group(1));
+			int animationIndex = ArtifactAnimationDumper.getAnimationIndex(atlas.group(2));
+			int page = atlas.group(3) == null ? 0 : Integer.parseInt(atlas.group(3));
+
+			if(artifactIndex >= m_cfpk.size() || animationIndex < 0)
+				return null;
+
+			Artifact artifact = m_cfpk.getArtifact(artifactIndex);
+
+			if(animationIndex >= artifact.getAnimationCount())
+				return null;
+
+			return new AtlasResource(m_cfpk.getOffset(artifactIndex), artifact.getAnimation(animationIndex), page);
+		}
+
+		return null;
+	}
+
+	@Nullable
+	private byte[] getResponse(String path, final Resource resource) throws IOException
+	{
+		try
+		{
+			return m_responses.get(path, new Callable<byte[]>() {
+				@Override
+				@Nullable
+				public byte[] call() throws IOException
+				{
+					return resource.render();
+				}
+			});
+		} catch (ExecutionException e)
+		{
+			Throwable cause = e.getCause();
+
+			if(cause instanceof IOException)
+				throw (IOException)cause;
+			else if(cause instanceof RuntimeException)
+				throw (RuntimeException)cause;
+			else if(cause instanceof Error)
+				throw (Error)cause;
+
+			throw new IOException("Error occured rendering response.", cause);
+		} catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for response to be rendered.");
+		}
+	}
+
+	//Responses to HEAD requests only carry the headers the full response would have.
+	private static void send(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException
+	{
+		exchange.getResponseHeaders().set("Content-Type", contentType);
+
+		if("HEAD".equals(exchange.getRequestMethod()))
+		{
+			exchange.getResponseHeaders().set("Content-Length", String.valueOf(body.length));
+			exchange.sendResponseHeaders(status, -1);
+			return;
+		}
+
+		exchange.sendResponseHeaders(status, body.length);
+
+		try(OutputStream os = exchange.getResponseBody())
+		{
+			os.write(body);
+		}
+	}
+
+	private static void sendText(HttpExchange exchange, int status, String message) throws IOException
+	{
+		send(exchange, status, TEXT_CONTENT_TYPE, message.getBytes(UTF8));
+	}
+
+	private void serve(HttpExchange exchange) throws IOException
+	{
+		String method = exchange.getRequestMethod();
+
+		if(!"HEAD".equals(method) && !"GET".equals(method))
+		{
+			exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+			sendText(exchange, STATUS_METHOD_NOT_ALLOWED, "Only GET and HEAD requests are supported.");
+			return;
+		}
+
+		String path = exchange.getRequestURI().getPath();
+		Resource resource = resolve(path);
+
+		if(resource == null)
+		{
+			sendText(exchange, STATUS_NOT_FOUND, String.format("Nothing is served at %s.", path));
+			return;
+		}
+
+		String entityTag = resource.getEntityTag();
+		exchange.getResponseHeaders().set("ETag", entityTag);
+		exchange.getResponseHeaders().set("Cache-Control", String.format("public, max-age=%d", m_maxAge));
+
+		if(entityTag.equals(exchange.getRequestHeaders().getFirst("If-None-Match")))
+		{
+			exchange.sendResponseHeaders(STATUS_NOT_MODIFIED, -1);
+			return;
+		}
+
+		byte body[] = getResponse(path, resource);
+
+		if(body == null)
+		{
+			exchange.getResponseHeaders().remove("ETag");
+			exchange.getResponseHeaders().remove("Cache-Control");
+			sendText(exchange, STATUS_NOT_FOUND, String.format("Nothing renderable is stored for %s.", path));
+			return;
+		}
+
+		send(exchange, STATUS_OK, PNG_CONTENT_TYPE, body);
+	}
+
+	private final class RequestHandler implements HttpHandler
+	{
+		@Override
+		public void handle(HttpExchange exchange)
+		{
+			try
+			{
+				serve(exchange);
+			} catch (IOException | RuntimeException e)
+			{
+				m_logger.error(String.format("Unable to serve %s.", exchange.getRequestURI()), e);
+
+				try
+				{
+					sendText(exchange, STATUS_INTERNAL_ERROR, "Unable to read the requested resource from the archives.");
+				} catch (IOException | IllegalStateException ex)
+				{
+					//The response had already been started or the client has gone away, there is nothing left to tell it.
+				}
+			} finally
+			{
+				exchange.close();
+			}
+		}
+	}
+
+	private interface Resource
+	{
+		//Cheap to compute, so a request can be answered as not modified without rendering the resource.
+		String getEntityTag() throws IOException;
+
+		//Returns null if there is nothing to render.
+		@Nullable
+		byte[] render() throws IOException;
+	}
+
+	private final class SpriteResource implements Resource
+	{
+		private final int m_spki;
+
+		public SpriteResource(int spki)
+		{
+			m_spki = spki;
+		}
+
+		@Override
+		public String getEntityTag() throws IOException
+		{
+			return createEntityTag(m_spk.getOrigin(m_spki), getRecordDigest(m_spki));
+		}
+
+		@Override
+		@Nullable
+		public byte[] render() throws IOException
+		{
+			BufferedImage sprite = m_sprites.get(m_spki);
+
+			return sprite == null ? null : encode(sprite);
+		}
+	}
+
+	private final class AtlasResource implements Resource
+	{
+		private final long m_offset;
+		private final ArtifactAnimation m_animation;
+		private final int m_page;
+
+		public AtlasResource(long offset, ArtifactAnimation animation, int page)
+		{
+			m_offset = offset;
+			m_animation = animation;
+			m_page = page;
+		}
+
+		//The atlas only depends on which sprites the animation uses, not on how its frames are laid out.
+		@Override
+		public String getEntityTag() throws IOException
+		{
+			StringBuilder contents = new StringBuilder();
+			contents.append(m_page);
+
+			for(int spki : m_animation.getDependentSpki())
+			{
+				if(spki < m_spk.size())
+					contents.append('\n').append(spki).append(' ').append(getRecordDigest(spki));
+			}
+
+			return createEntityTag(m_offset, contents.toString());
+		}
+
+		@Override
+		@Nullable
+		public byte[] render() throws IOException
+		{
+			SpkSpriteSheet spritesheet = SpkSpriteSheet.compile(m_sprites, m_animation.getDependentSpki(), m_packer);
+
+			if(spritesheet == null || m_page >= spritesheet.getPageCount())
+				return null;
+
+			return encode(spritesheet.getSpritesheet(m_page));
+		}
+	}
+
+	public static void main(String[] args)
+	{
+		m_logger.info("Dark Eden Sprite Server. Written by Jeremy Wildsmith. This software is open-sourced under GPLV3 license. The git repository for this project is hosted at https://github.com/JeremyWildsmith/darkedenkit");
+		m_logger.info("Command Line Arguments: [spk source] [spki source] [spk copy fill pattern = 01(spk) 011(ispk)] [cfpk source, optional, required to serve artifact atlases] [--port=port to listen on, defaults to " + DEFAULT_PORT + "] [--bind=address to listen on, defaults to " + DEFAULT_BIND_ADDRESS + "] [--threads=request threads, defaults to the number of available processors] [--cache-budget=decoded sprite cache size in MB, defaults to " + DEFAULT_SPRITE_CACHE_BUDGET_MB + "] [--response-cache-budget=encoded response cache size in MB, defaults to " + DEFAULT_RESPONSE_CACHE_BUDGET_MB + "] [--png-level=png compression level from 0 (fastest) to 9 (smallest), defaults to " + PngEncoder.DEFAULT_COMPRESSION_LEVEL + "] [--max-page-size=maximum atlas page width and height in pixels, defaults to " + DEFAULT_MAX_PAGE_SIZE + "] [--max-age=seconds clients may use a response without revalidating it, defaults to " + DEFAULT_MAX_AGE_SECONDS + "] [--metadata-cache=directory in which parsed spki and cfpk metadata is kept for later runs, disabled by default]");
+
+		CommandLineArguments arguments = new CommandLineArguments(args);
+
+		if(arguments.getPositionalCount() < 3)
+			m_logger.error("Insufficient arguments provided to run sprite server");
+		else
+		{
+			String copyFillPattern = arguments.getPositional(2);
+
+			if(copyFillPattern.isEmpty())
+				m_logger.error("Invalid copy fill pattern supplied.");
+			else
+			{
+				boolean copyFillPatternBuffer[] = new boolean[copyFillPattern.length()];
+
+				for(int i = 0; i < copyFillPattern.length(); i++)
+					copyFillPatternBuffer[i] = copyFillPattern.charAt(i) == '1';
+
+				try
+				{
+					int port = arguments.getIntOption("port", DEFAULT_PORT);
+					int workerThreads = arguments.getIntOption("threads", Runtime.getRuntime().availableProcessors());
+					int cacheBudget = arguments.getIntOption("cache-budget", DEFAULT_SPRITE_CACHE_BUDGET_MB);
+					int responseCacheBudget = arguments.getIntOption("response-cache-budget", DEFAULT_RESPONSE_CACHE_BUDGET_MB);
+					int pngLevel = arguments.getIntOption("png-level", PngEncoder.DEFAULT_COMPRESSION_LEVEL);
+					int maxPageSize = arguments.getIntOption("max-page-size", DEFAULT_MAX_PAGE_SIZE);
+					int maxAge = arguments.getIntOption("max-age", DEFAULT_MAX_AGE_SECONDS);
+					String metadataCacheDirectory = arguments.getOption("metadata-cache", null);
+
+					if(port < 0 || port > 0xFFFF)
+						m_logger.error("Port must be between 0 and 65535. Operation aborted.");
+					else if(workerThreads <= 0)
+						m_logger.error("At least one worker thread is required. Operation aborted.");
+					else if(cacheBudget < 0 || responseCacheBudget < 0)
+						m_logger.error("Cache budgets must not be negative. Operation aborted.");
+					else if(pngLevel < 0 || pngLevel > 9)
+						m_logger.error("PNG compression level must be between 0 and 9. Operation aborted.");
+					else if(maxPageSize <= 0)
+						m_logger.error("Maximum atlas page size must be positive. Operation aborted.");
+					else if(maxAge < 0)
+						m_logger.error("Maximum age must not be negative. Operation aborted.");
+					else
+					{
+						PkMetadataCache metadataCache = metadataCacheDirectory == null ? null : new PkMetadataCache(new File(metadataCacheDirectory));
+						SpkArchive spk = SpkArchive.open(new File(arguments.getPositional(0)), new File(arguments.getPositional(1)), copyFillPatternBuffer, metadataCache);
+						CfpkArchive cfpk = arguments.getPositionalCount() < 4 ? null : CfpkArchive.open(new File(arguments.getPositional(3)), metadataCache);
+						InetSocketAddress address = new InetSocketAddress(arguments.getOption("bind", DEFAULT_BIND_ADDRESS), port);
+
+						final SpriteServer server = new SpriteServer(spk, cfpk, cacheBudget * BYTES_PER_MB, responseCacheBudget * BYTES_PER_MB, new PngEncoder(pngLevel), maxPageSize, maxAge, address, workerThreads);
+
+						Runtime.getRuntime().addShutdownHook(new Thread("sprite-server-shutdown") {
+							@Override
+							public void run()
+							{
+								server.close();
+							}
+						});
+
+						server.start();
+					}
+				} catch (InvalidArgumentException e)
+				{
+					m_logger.error(e.getMessage() + " Operation aborted.");
+				} catch (PkiParseException e)
+				{
+					m_logger.error("Unable to extract spki indices. Operation aborted.", e);
+				} catch (IOException e)
+				{
+					m_logger.error("Unable to open the archives or listen for requests. Operation aborted.", e);
+				}
+			}
+		}
+	}
+}
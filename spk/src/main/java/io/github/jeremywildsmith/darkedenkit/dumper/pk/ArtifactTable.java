@@ -0,0 +1,388 @@
+package io.github.jeremywildsmith.darkedenkit.dumper.pk;
+
+import java.util.Arrays;
+
+//The artifacts of a cfpk, stored as flat arrays rather than an object per frame. Artifacts, animations and perspectives each have an array
+//of start offsets: the children of element i are those from starts[i] up to starts[i + 1]. Frames are stored as one array per field.
+//
+//Artifact, ArtifactAnimation and ArtifactAnimationPerspective are flyweight views that only hold their index into these arrays. Frames are
+//only addressed by their index within a perspective. A table is never modified once built, so it may be shared between any number of threads.
+//
+//A table holds either every artifact of a cfpk or a run of consecutive artifacts loaded on their own, see CfpkArchive.
+public final class ArtifactTable
+{
+	//Index within the cfpk of the first artifact in the table.
+	private final int m_firstArtifact;
+
+	private final int[] m_artifactAnimations;
+	private final int[] m_animationPerspectives;
+	private final int[] m_perspectiveFrames;
+
+	private final int[] m_frameSpki;
+	private final int[] m_frameOriginX;
+	private final int[] m_frameOriginY;
+	private final int[] m_frameDurationFactor;
+
+	//The arrays are used as they are, not copied. Callers are expected to have validated them, see isValid.
+	ArtifactTable(int[] artifactAnimations, int[] animationPerspectives, int[] perspectiveFrames, int[] frameSpki, int[] frameOriginX, int[] frameOriginY, int[] frameDurationFactor)
+	{
+		this(0, artifactAnimations, animationPerspectives, perspectiveFrames, frameSpki, frameOriginX, frameOriginY, frameDurationFactor);
+	}
+
+	ArtifactTable(int firstArtifact, int[] artifactAnimations, int[] animationPerspectives, int[] perspectiveFrames, int[] frameSpki, int[] frameOriginX, int[] frameOriginY, int[] frameDurationFactor)
+	{
+		m_firstArtifact = firstArtifact;
+		m_artifactAnimations = artifactAnimations;
+		m_animationPerspectives = animationPerspectives;
+		m_perspectiveFrames = perspectiveFrames;
+		m_frameSpki = frameSpki;
+		m_frameOriginX = frameOriginX;
+		m_frameOriginY = frameOriginY;
+		m_frameDurationFactor = frameDurationFactor;
+	}
+
+	//Start arrays must begin at 0, never decrease and end at the number of children.
+	private static boolean isValidStarts(int starts[], int children)
+	{
+		if(starts.length == 0 || starts[0] != 0 || starts[starts.length - 1] != children)
+			return false;
+
+		for(int i = 1; i < starts.length; i++)
+		{
+			if(starts[i] < starts[i - 1])
+				return false;
+		}
+
+		return true;
+	}
+
+	static boolean isValid(int[] artifactAnimations, int[] animationPerspectives, int[] perspectiveFrames, int[] frameSpki, int[] frameOriginX, int[] frameOriginY, int[] frameDurationFactor)
+	{
+		int frames = frameSpki.length;
+
+		if(frameOriginX.length != frames || frameOriginY.length != frames || frameDurationFactor.length != frames)
+			return false;
+
+		return isValidStarts(artifactAnimations, animationPerspectives.length - 1) &&
+				isValidStarts(animationPerspectives, perspectiveFrames.length - 1) &&
+				isValidStarts(perspectiveFrames, frames);
+	}
+
+	public int getFirstArtifactIndex()
+	{
+		return m_firstArtifact;
+	}
+
+	public int getArtifactCount()
+	{
+		return m_artifactAnimations.length - 1;
+	}
+
+	public int getAnimationCount()
+	{
+		return m_animationPerspectives.length - 1;
+	}
+
+	public int getPerspectiveCount()
+	{
+		return m_perspectiveFrames.length - 1;
+	}
+
+	public int getFrameCount()
+	{
+		return m_frameSpki.length;
+	}
+
+	//The index is relative to the start of the table, which is only the index within the cfpk if the table starts at the first artifact.
+	public Artifact getArtifact(int index)
+	{
+		if(index < 0 || index >= getArtifactCount())
+			throw new IndexOutOfBoundsException(String.format("No artifact with index %d.", index));
+
+		return new Artifact(index);
+	}
+
+	//The raw arrays, for writing the table out again. They must not be modified.
+	int[] getArtifactAnimations()
+	{
+		return m_artifactAnimations;
+	}
+
+	int[] getAnimationPerspectives()
+	{
+		return m_animationPerspectives;
+	}
+
+	int[] getPerspectiveFrames()
+	{
+		return m_perspectiveFrames;
+	}
+
+	int[] getFrameSpki()
+	{
+		return m_frameSpki;
+	}
+
+	int[] getFrameOriginX()
+	{
+		return m_frameOriginX;
+	}
+
+	int[] getFrameOriginY()
+	{
+		return m_frameOriginY;
+	}
+
+	int[] getFrameDurationFactor()
+	{
+		return m_frameDurationFactor;
+	}
+
+	private static void checkChild(int child, int count)
+	{
+		if(child < 0 || child >= count)
+			throw new IndexOutOfBoundsException(String.format("Index %d is outside of the %d elements available.", child, count));
+	}
+
+	public final class Artifact
+	{
+		private final int m_index;
+
+		private Artifact(int index)
+		{
+			m_index = index;
+		}
+
+		//Index of the artifact within the cfpk.
+		public int getIndex()
+		{
+			return m_firstArtifact + m_index;
+		}
+
+		public int getAnimationCount()
+		{
+			return m_artifactAnimations[m_index + 1] - m_artifactAnimations[m_index];
+		}
+
+		public ArtifactAnimation getAnimation(int animation)
+		{
+			checkChild(animation, getAnimationCount());
+
+			return new ArtifactAnimation(m_artifactAnimations[m_index] + animation);
+		}
+
+		//Number of bytes the artifact occupies in the cfpk it was read from. Merged frames are counted once for every time they were repeated.
+		public int getEncodedLength()
+		{
+			int length = CfpkExtractor.ARTIFACT_HEADER_LENGTH;
+
+			for(int animation = m_artifactAnimations[m_index]; animation < m_artifactAnimations[m_index + 1]; animation++)
+			{
+				length += CfpkExtractor.ANIMATION_HEADER_LENGTH;
+
+				for(int perspective = m_animationPerspectives[animation]; perspective < m_animationPerspectives[animation + 1]; perspective++)
+				{
+					length += CfpkExtractor.PERSPECTIVE_HEADER_LENGTH;
+
+					for(int frame = m_perspectiveFrames[perspective]; frame < m_perspectiveFrames[perspective + 1]; frame++)
+						length += CfpkExtractor.FRAME_LENGTH * m_frameDurationFactor[frame];
+				}
+			}
+
+			return length;
+		}
+	}
+
+	public final class ArtifactAnimation
+	{
+		private final int m_index;
+
+		private ArtifactAnimation(int index)
+		{
+			m_index = index;
+		}
+
+		public int getPerspectiveCount()
+		{
+			return m_animationPerspectives[m_index + 1] - m_animationPerspectives[m_index];
+		}
+
+		public ArtifactAnimationPerspective getPerspective(int perspective)
+		{
+			checkChild(perspective, getPerspectiveCount());
+
+			return new ArtifactAnimationPerspective(m_animationPerspectives[m_index] + perspective);
+		}
+
+		//Every spki used by a frame of the animation, in ascending order and without duplicates.
+		public int[] getDependentSpki()
+		{
+			int firstFrame = m_perspectiveFrames[m_animationPerspectives[m_index]];
+			int endFrame = m_perspectiveFrames[m_animationPerspectives[m_index + 1]];
+
+			int spki[] = Arrays.copyOfRange(m_frameSpki, firstFrame, endFrame);
+			Arrays.sort(spki);
+
+			int unique = 0;
+			for(int i = 0; i < spki.length; i++)
+			{
+				if(unique == 0 || spki[unique - 1] != spki[i])
+					spki[unique++] = spki[i];
+			}
+
+			return unique == spki.length ? spki : Arrays.copyOf(spki, unique);
+		}
+	}
+
+	//Frames are addressed by their index within the perspective.
+	public final class ArtifactAnimationPerspective
+	{
+		private final int m_index;
+
+		private ArtifactAnimationPerspective(int index)
+		{
+			m_index = index;
+		}
+
+		public int getFrameCount()
+		{
+			return m_perspectiveFrames[m_index + 1] - m_perspectiveFrames[m_index];
+		}
+
+		private int getFrameIndex(int frame)
+		{
+			checkChild(frame, getFrameCount());
+
+			return m_perspectiveFrames[m_index] + frame;
+		}
+
+		public int getSpki(int frame)
+		{
+			return m_frameSpki[getFrameIndex(frame)];
+		}
+
+		public int getOriginX(int frame)
+		{
+			return m_frameOriginX[getFrameIndex(frame)];
+		}
+
+		public int getOriginY(int frame)
+		{
+			return m_frameOriginY[getFrameIndex(frame)];
+		}
+
+		//Consecutive identical frames are stored once, with a duration factor of the number of times they were repeated.
+		public int getDurationFactor(int frame)
+		{
+			return m_frameDurationFactor[getFrameIndex(frame)];
+		}
+	}
+
+	//Appends artifacts as they are read. Frames equal to the previous frame of the same perspective extend its duration instead of being added.
+	static final class Builder
+	{
+		private final int m_firstArtifact;
+
+		private final IntList m_artifactAnimations = new IntList();
+		private final IntList m_animationPerspectives = new IntList();
+		private final IntList m_perspectiveFrames = new IntList();
+
+		private final IntList m_frameSpki = new IntList();
+		private final IntList m_frameOriginX = new IntList();
+		private final IntList m_frameOriginY = new IntList();
+		private final IntList m_frameDurationFactor = new IntList();
+
+		public Builder()
+		{
+			this(0);
+		}
+
+		public Builder(int firstArtifact)
+		{
+			m_firstArtifact = firstArtifact;
+		}
+
+		public void startArtifact()
+		{
+			m_artifactAnimations.add(m_animationPerspectives.size());
+		}
+
+		public void startAnimation()
+		{
+			m_animationPerspectives.add(m_perspectiveFrames.size());
+		}
+
+		public void startPerspective()
+		{
+			m_perspectiveFrames.add(m_frameSpki.size());
+		}
+
+		public void addFrame(int spki, int originX, int originY)
+		{
+			int frames = m_frameSpki.size();
+			int perspectiveStart = m_perspectiveFrames.get(m_perspectiveFrames.size() - 1);
+
+			if(frames > perspectiveStart && m_frameSpki.get(frames - 1) == spki && m_frameOriginX.get(frames - 1) == originX && m_frameOriginY.get(frames - 1) == originY)
+				m_frameDurationFactor.set(frames - 1, m_frameDurationFactor.get(frames - 1) + 1);
+			else
+			{
+				m_frameSpki.add(spki);
+				m_frameOriginX.add(originX);
+				m_frameOriginY.add(originY);
+				m_frameDurationFactor.add(1);
+			}
+		}
+
+		public ArtifactTable build()
+		{
+			//Each start array ends with the total number of children.
+			return new ArtifactTable(m_firstArtifact, m_artifactAnimations.toArray(m_animationPerspectives.size()),
+										m_animationPerspectives.toArray(m_perspectiveFrames.size()),
+										m_perspectiveFrames.toArray(m_frameSpki.size()),
+										m_frameSpki.toArray(), m_frameOriginX.toArray(), m_frameOriginY.toArray(), m_frameDurationFactor.toArray());
+		}
+	}
+
+	private static final class IntList
+	{
+		private int[] m_values = new int[16];
+		private int m_size = 0;
+
+		public int size()
+		{
+			return m_size;
+		}
+
+		public int get(int index)
+		{
+			return m_values[index];
+		}
+
+		public void set(int index, int value)
+		{
+			m_values[index] = value;
+		}
+
+		public void add(int value)
+		{
+			if(m_size == m_values.length)
+				m_values = Arrays.copyOf(m_values, m_values.length * 2);
+
+			m_values[m_size++] = value;
+		}
+
+		public int[] toArray()
+		{
+			return Arrays.copyOf(m_values, m_size);
+		}
+
+		//Copies the values with one more value appended.
+		public int[] toArray(int last)
+		{
+			int values[] = Arrays.copyOf(m_values, m_size + 1);
+			values[m_size] = last;
+
+			return values;
+		}
+	}
+}
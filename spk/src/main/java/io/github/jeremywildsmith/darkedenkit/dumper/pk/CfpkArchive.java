@@ -0,0 +1,87 @@
+package io.github.jeremywildsmith.darkedenkit.dumper.pk;
+
+import io.github.jeremywildsmith.darkedenkit.Nullable;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+//Random access to the artifacts of a cfpk. Only the offset of each artifact is read up front; an artifact's animations are parsed when
+//it is requested, so loading one artifact costs the same wherever it lies in the document. All methods may be called concurrently from
+//any number of threads.
+public final class CfpkArchive implements Closeable
+{
+	private final ByteBuffer m_cfpk;
+	private final int[] m_offsets;
+	private final CfpkExtractor m_extractor = new CfpkExtractor();
+
+	private volatile boolean m_closed = false;
+
+	private CfpkArchive(ByteBuffer cfpk, int[] offsets)
+	{
+		m_cfpk = cfpk;
+		m_offsets = offsets;
+	}
+
+	public static CfpkArchive open(File cfpkFile) throws IOException
+	{
+		return open(cfpkFile, null);
+	}
+
+	//If a metadata cache is given, the offsets are kept there and the cfpk is only walked when the cache does not already hold them.
+	public static CfpkArchive open(File cfpkFile, @Nullable PkMetadataCache metadataCache) throws IOException
+	{
+		ByteBuffer cfpk = new MappedSpkFile(cfpkFile).slice(0);
+		int offsets[];
+
+		if(metadataCache == null)
+			offsets = new CfpkExtractor().index(cfpk);
+		else
+			offsets = metadataCache.getArtifactOffsets(cfpkFile);
+
+		if(offsets[offsets.length - 1] > cfpk.remaining())
+			throw new IOException("Artifact offsets do not fit in the cfpk document.");
+
+		return new CfpkArchive(cfpk, offsets);
+	}
+
+	private void checkOpen() throws IOException
+	{
+		if(m_closed)
+			throw new IOException("CFPK archive has been closed.");
+	}
+
+	public int size()
+	{
+		return m_offsets.length - 1;
+	}
+
+	public int getOffset(int index)
+	{
+		return m_offsets[index];
+	}
+
+	//Number of bytes the artifact occupies in the cfpk.
+	public int getEncodedLength(int index)
+	{
+		return m_offsets[index + 1] - m_offsets[index];
+	}
+
+	public ArtifactTable.Artifact getArtifact(int index) throws IOException
+	{
+		checkOpen();
+
+		if(index < 0 || index >= size())
+			throw new IOException(String.format("No artifact with index %d, the cfpk holds %d artifacts.", index, size()));
+
+		return m_extractor.extractArtifact(m_cfpk, m_offsets[index], index);
+	}
+
+	//The mapping itself is released once it is no longer reachable, so closing only prevents further reads.
+	@Override
+	public void close()
+	{
+		m_closed = true;
+	}
+}
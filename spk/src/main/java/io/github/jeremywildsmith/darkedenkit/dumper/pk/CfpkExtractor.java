@@ -1,209 +1,128 @@
 package io.github.jeremywildsmith.darkedenkit.dumper.pk;
 
-import io.github.jeremywildsmith.darkedenkit.LittleEndianDataInputStream;
+import io.github.jeremywildsmith.darkedenkit.IOUtils;
+import io.github.jeremywildsmith.darkedenkit.LittleEndianBufferReader;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.nio.ByteBuffer;
 
 public class CfpkExtractor
 {
-	private ArtifactAnimationPerspective[] readArtifactAnimationPerspectives(LittleEndianDataInputStream dis) throws IOException
+	//Length of the artifact count that precedes the first artifact.
+	public static final int HEADER_LENGTH = 2;
+	
+	static final int ARTIFACT_HEADER_LENGTH = 1;
+	static final int ANIMATION_HEADER_LENGTH = 1;
+	static final int PERSPECTIVE_HEADER_LENGTH = 2;
+	static final int FRAME_LENGTH = 6;
+	
+	private void readArtifactAnimationPerspectives(LittleEndianBufferReader dis, ArtifactTable.Builder table) throws IOException
 	{
 		int numPerspectives = dis.readByte();
 		
 		if(numPerspectives < 0)
 			throw new IOException("Negative perspective array length declared.");
 		
-		ArtifactAnimationPerspective perspectives[] = new ArtifactAnimationPerspective[numPerspectives];
-		
 		for(int x = 0; x < numPerspectives; x++)
 		{
 			int numFrames = dis.readUnsignedShort();
 			
-			if(numFrames < 0)
-				throw new IOException("Negative frames array length declared.");
-			
-			List<ArtifactAnimationFrame> frames = new ArrayList<>();
+			table.startPerspective();
 			
 			for(int y = 0; y < numFrames; y++)
-			{
-				ArtifactAnimationFrame frame = new ArtifactAnimationFrame(dis.readUnsignedShort(), dis.readShort(), dis.readShort());
-				
-				if(frames.size() > 0 && frames.get(frames.size() - 1).equals(frame))
-					frames.get(frames.size() - 1).incrementDurationFactor();
-				else
-					frames.add(frame);
-			}
-			
-			perspectives[x] = new ArtifactAnimationPerspective(frames.toArray(new ArtifactAnimationFrame[frames.size()]));
+				table.addFrame(dis.readUnsignedShort(), dis.readShort(), dis.readShort());
 		}
-		
-		return perspectives;
 	}
 	
-	private ArtifactAnimation[] readArtifactAnimations(LittleEndianDataInputStream dis) throws IOException
+	private void readArtifactAnimations(LittleEndianBufferReader dis, ArtifactTable.Builder table) throws IOException
 	{
 		int numAnimations = dis.readUnsignedByte();
 		
-		if(numAnimations < 0)
-			throw new IOException("Negative animations array length declared.");
-		
-		ArtifactAnimation artifactAnimations[] = new ArtifactAnimation[numAnimations];
-		
 		for(int x = 0; x < numAnimations; x++)
-			artifactAnimations[x] = new ArtifactAnimation(readArtifactAnimationPerspectives(dis));
-		
-		return artifactAnimations;
+		{
+			table.startAnimation();
+			readArtifactAnimationPerspectives(dis, table);
+		}
 	}
 	
-	private Artifact[] readArtifacts(LittleEndianDataInputStream dis) throws IOException
+	private ArtifactTable readArtifacts(LittleEndianBufferReader dis) throws IOException
 	{
 		int numArtifacts = dis.readUnsignedShort();
+		ArtifactTable.Builder table = new ArtifactTable.Builder();
 		
-		if(numArtifacts < 0)
-			throw new IOException("Negative artifact array length declared.");
-		
-		Artifact artifacts[] = new Artifact[numArtifacts];
-		//These for loops really should be broken into at least one or two methods...
 		for(int i = 0; i < numArtifacts; i++)
-			artifacts[i] = new Artifact(readArtifactAnimations(dis));
+		{
+			table.startArtifact();
+			readArtifactAnimations(dis, table);
+		}
 		
-		return artifacts;
+		return table.build();
 	}
 	
-	public Artifact[] extract(InputStream spkiSource) throws IOException
+	//Walks the artifacts without reading their frames. Returns the offset of every artifact within the cfpk, followed by the offset
+	//where the last artifact ends. Offsets are relative to the buffer's position, which is left unchanged.
+	public int[] index(ByteBuffer cfpkSource) throws IOException
 	{
-		return readArtifacts(new LittleEndianDataInputStream(spkiSource));
-	}
-	
-	public static final class ArtifactAnimationFrame
-	{
-		private final int m_spki;
-		private final int m_originX;
-		private final int m_originY;
-		private int m_durationFactor;
-		
-		public ArtifactAnimationFrame(int spki, int originX, int originY)
-		{
-			m_spki = spki;
-			m_originX = originX;
-			m_originY = originY;
-			m_durationFactor = 1;
-		}
-		
-		public int getSpki()
-		{
-			return m_spki;
-		}
+		LittleEndianBufferReader dis = new LittleEndianBufferReader(cfpkSource.slice());
 		
-		public int getOriginX()
-		{
-			return m_originX;
-		}
-		
-		public int getOriginY()
-		{
-			return m_originY;
-		}
-		
-		public int getDurationFactor()
-		{
-			return m_durationFactor;
-		}
+		int numArtifacts = dis.readUnsignedShort();
+		int offsets[] = new int[numArtifacts + 1];
 		
-		private void incrementDurationFactor()
+		for(int i = 0; i < numArtifacts; i++)
 		{
-			m_durationFactor++;
+			offsets[i] = dis.getPosition();
+			
+			int numAnimations = dis.readUnsignedByte();
+			
+			for(int x = 0; x < numAnimations; x++)
+			{
+				int numPerspectives = dis.readByte();
+				
+				if(numPerspectives < 0)
+					throw new IOException("Negative perspective array length declared.");
+				
+				for(int y = 0; y < numPerspectives; y++)
+				{
+					int frameBytes = dis.readUnsignedShort() * FRAME_LENGTH;
+					
+					if(dis.skipBytes(frameBytes) != frameBytes)
+						throw new EOFException();
+				}
+			}
 		}
 		
-		@Override
-		public int hashCode() {
-			final int prime = 31;
-			int result = 1;
-			result = prime * result + m_originX;
-			result = prime * result + m_originY;
-			result = prime * result + m_spki;
-			return result;
-		}
-
-		@Override
-		public boolean equals(Object obj) {
-			if (this == obj)
-				return true;
-			if (obj == null)
-				return false;
-			if (getClass() != obj.getClass())
-				return false;
-			ArtifactAnimationFrame other = (ArtifactAnimationFrame) obj;
-			if (m_originX != other.m_originX)
-				return false;
-			if (m_originY != other.m_originY)
-				return false;
-			if (m_spki != other.m_spki)
-				return false;
-			return true;
-		}
+		offsets[numArtifacts] = dis.getPosition();
 		
+		return offsets;
 	}
 	
-	public static final class ArtifactAnimationPerspective
+	//Parses only the artifact that starts at the given offset, as returned by index. The artifact's index is the one reported by
+	//the returned artifact and must match the offset.
+	public ArtifactTable.Artifact extractArtifact(ByteBuffer cfpkSource, int offset, int index) throws IOException
 	{
-		private final ArtifactAnimationFrame m_frames[];
+		if(offset < HEADER_LENGTH || offset > cfpkSource.remaining())
+			throw new IOException(String.format("Artifact offset %d lies outside of the cfpk document.", offset));
 		
-		public ArtifactAnimationPerspective(ArtifactAnimationFrame[] frames)
-		{
-			m_frames = frames;
-		}
+		ByteBuffer artifact = cfpkSource.duplicate();
+		artifact.position(cfpkSource.position() + offset);
 		
-		public ArtifactAnimationFrame[] getFrames()
-		{
-			return m_frames;
-		}
+		ArtifactTable.Builder table = new ArtifactTable.Builder(index);
+		table.startArtifact();
+		readArtifactAnimations(new LittleEndianBufferReader(artifact), table);
+		
+		return table.build().getArtifact(0);
 	}
 	
-	public static final class ArtifactAnimation
+	public ArtifactTable extract(InputStream cfpkSource) throws IOException
 	{
-		private final ArtifactAnimationPerspective m_perspectives[];
-		
-		public ArtifactAnimation(ArtifactAnimationPerspective[] perspectives)
-		{
-			m_perspectives = perspectives;
-		}
-		
-		public ArtifactAnimationPerspective[] getPerspectives()
-		{
-			return m_perspectives;
-		}
-		
-		public Set<Integer> getDependentSpki()
-		{
-			Set<Integer> dependentSpki = new HashSet<>();
-			for(ArtifactAnimationPerspective p : m_perspectives)
-			{
-				for(ArtifactAnimationFrame f : p.getFrames())
-					dependentSpki.add(f.getSpki());
-			}
-			
-			return dependentSpki;
-		}
+		return extract(IOUtils.readFully(cfpkSource));
 	}
 	
-	public static final class Artifact
+	//The buffer's position is left unchanged.
+	public ArtifactTable extract(ByteBuffer cfpkSource) throws IOException
 	{
-		private final ArtifactAnimation[] m_animations;
-		
-		public Artifact(ArtifactAnimation[] animations)
-		{
-			m_animations = animations;
-		}
-		
-		public ArtifactAnimation[] getAnimations()
-		{
-			return m_animations;
-		}
+		return readArtifacts(new LittleEndianBufferReader(cfpkSource));
 	}
 }
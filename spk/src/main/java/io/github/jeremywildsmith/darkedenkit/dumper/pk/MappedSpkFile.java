@@ -0,0 +1,43 @@
+package io.github.jeremywildsmith.darkedenkit.dumper.pk;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+public final class MappedSpkFile
+{
+	private final ByteBuffer m_mapping;
+	
+	public MappedSpkFile(File spkFile) throws IOException
+	{
+		//The mapping remains valid after the channel it was created from has been closed.
+		try(RandomAccessFile spk = new RandomAccessFile(spkFile, "r");
+			FileChannel channel = spk.getChannel())
+		{
+			if(channel.size() > Integer.MAX_VALUE)
+				throw new IOException("SPK document is too large to be mapped into memory.");
+			
+			m_mapping = channel.map(MapMode.READ_ONLY, 0, channel.size());
+		}
+	}
+	
+	public int size()
+	{
+		return m_mapping.capacity();
+	}
+	
+	//Each slice has its own position and limit, so slices can be handed out to and consumed by many threads at once.
+	public ByteBuffer slice(long offset) throws IOException
+	{
+		if(offset < 0 || offset > m_mapping.capacity())
+			throw new IOException(String.format("Record origin %d lies outside of the SPK document.", offset));
+		
+		ByteBuffer record = m_mapping.duplicate();
+		record.position((int)offset);
+		
+		return record.slice();
+	}
+}
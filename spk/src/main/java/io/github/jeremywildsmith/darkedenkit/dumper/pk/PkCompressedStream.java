@@ -1,116 +1,81 @@
 package io.github.jeremywildsmith.darkedenkit.dumper.pk;
 
-import io.github.jeremywildsmith.darkedenkit.ConstInputStream;
 import io.github.jeremywildsmith.darkedenkit.IOUtils;
-import io.github.jeremywildsmith.darkedenkit.LittleEndianDataInputStream;
-import io.github.jeremywildsmith.darkedenkit.NullInputStream;
+import io.github.jeremywildsmith.darkedenkit.LittleEndianBufferReader;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
 
+//Streams the bytes a chunk of PK runs decodes to. The runs are decoded up front by PkRunDecoder, so the copy/fill format is only
+//implemented there.
 public final class PkCompressedStream extends InputStream
 {
-	private final byte[] m_fill;
-	private final boolean[] m_copyFillPattern;
-	private final LittleEndianDataInputStream m_pkSource;
+	private final byte[] m_decoded;
+	private int m_position = 0;
 	
-	private InputStream m_lastChunkStream = new NullInputStream();
-	
-	private int m_operationIndex = 0;
+	//Decodes runs from the buffer's position up to its limit. The buffer's position is left unchanged.
+	public PkCompressedStream(byte[] fill, boolean[] copyFillPattern, ByteBuffer pkSource) throws IOException
+	{
+		PkRunDecoder decoder = new PkRunDecoder(fill, copyFillPattern);
+		int compressedLength = pkSource.remaining();
+		
+		m_decoded = new byte[decoder.getDecodedLength(new LittleEndianBufferReader(pkSource), compressedLength)];
+		decoder.decode(new LittleEndianBufferReader(pkSource), compressedLength, m_decoded, 0, m_decoded.length);
+	}
 	
-	public PkCompressedStream(byte[] fill, boolean[] copyFillPattern, InputStream pkSource)
+	//Decodes runs until the end of the stream, so the stream should end with the chunk. The source is read and closed here.
+	public PkCompressedStream(byte[] fill, boolean[] copyFillPattern, InputStream pkSource) throws IOException
 	{
-		if(copyFillPattern.length == 0)
-			throw new IllegalArgumentException("Copy fill pattern must contain at least one element");
-
-		m_fill = fill;
-		m_copyFillPattern = copyFillPattern;
-		m_pkSource = new LittleEndianDataInputStream(pkSource);
+		this(fill, copyFillPattern, readAndClose(pkSource));
 	}
 	
-	//Since the streams are provided by the caller, it is their responsibility to close them.
-	private InputStream extract(int length) throws IOException
+	private static ByteBuffer readAndClose(InputStream pkSource) throws IOException
 	{
-		if(m_pkSource.available() == 0)
-			return new NullInputStream();
-		
-		@SuppressWarnings("resource")
-		InputStream extractSource = new NullInputStream();
-		
-		try
+		try(InputStream source = pkSource)
 		{
-			int extracted = 0;
-			
-			while(extracted < length && m_pkSource.available() != 0)
-			{
-				int operationLength = m_pkSource.readShort() * 2;
-				
-				if(operationLength < 0)
-					throw new IOException("Unexpected operation length.");
-				
-				extracted += operationLength;
-				
-				if(m_copyFillPattern[m_operationIndex % m_copyFillPattern.length])
-					extractSource = new SequenceInputStream(extractSource, IOUtils.copy(m_pkSource, operationLength));
-				else
-					extractSource = new SequenceInputStream(extractSource, new ConstInputStream(m_fill, operationLength));
-				
-				m_operationIndex++;
-			}
-			
-			return extractSource;
-		} catch (IOException e)
-		{
-			throw new IOException("IO error occured attempting to decompress PK chunk.", e);
+			return IOUtils.readFully(source);
 		}
 	}
-
-	private InputStream extract() throws IOException
-	{
-		return extract(1);
-	}
 	
 	@Override
-	public int available() throws IOException
+	public int available()
 	{
-		return m_lastChunkStream.available() + m_pkSource.available();
+		return m_decoded.length - m_position;
 	}
 	
 	@Override
-	public int read() throws IOException
+	public int read()
 	{
-		if(m_lastChunkStream.available() == 0 && m_pkSource.available() != 0)
-		{
-			m_lastChunkStream = extract();
-			return read();
-		}
-		else
-			return m_lastChunkStream.read();
+		return m_position < m_decoded.length ? m_decoded[m_position++] & 0xFF : -1;
 	}
 	
 	@Override
-	public int read(byte[] buf) throws IOException
+	public int read(byte[] buf)
 	{
 		return read(buf, 0, buf.length);
 	}
 	
 	@Override
-	public int read(byte buf[], int off, int len) throws IOException
+	public int read(byte buf[], int off, int len)
 	{
-		int read = IOUtils.copy(m_lastChunkStream, buf, off, len);
+		int read = Math.min(len, available());
 		
-		if(read != len)
-			m_lastChunkStream = extract(len - read);
+		if(read == 0 && len > 0)
+			return -1;
 		
-		read += IOUtils.copy(m_lastChunkStream, buf, off + read, len - read);
+		System.arraycopy(m_decoded, m_position, buf, off, read);
+		m_position += read;
 		
-		return read == 0 && m_lastChunkStream.available() == 0 ? -1 : read;
+		return read;
 	}
 	
 	@Override
-	public void close() throws IOException
+	public long skip(long n)
 	{
-		m_pkSource.close();
+		int skipped = (int)Math.max(0, Math.min(n, available()));
+		m_position += skipped;
+		
+		return skipped;
 	}
 }
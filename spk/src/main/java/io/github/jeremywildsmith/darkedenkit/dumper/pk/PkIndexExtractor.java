@@ -1,18 +1,30 @@
 package io.github.jeremywildsmith.darkedenkit.dumper.pk;
 
-import io.github.jeremywildsmith.darkedenkit.LittleEndianDataInputStream;
+import io.github.jeremywildsmith.darkedenkit.IOUtils;
+import io.github.jeremywildsmith.darkedenkit.LittleEndianBufferReader;
 
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 
 public class PkIndexExtractor
 {
 	public long[] extract(InputStream spkiSource) throws PkiParseException
 	{
-		//Since the caller provided the input stream, it is their responsibility to close it.
-		@SuppressWarnings("resource")
-		LittleEndianDataInputStream dis = new LittleEndianDataInputStream(spkiSource);
+		try
+		{
+			return extract(IOUtils.readFully(spkiSource));
+		} catch (IOException e)
+		{
+			throw new PkiParseException("IO error occured attempting to read spki file contents.", e);
+		}
+	}
+	
+	//The buffer's position is left unchanged.
+	public long[] extract(ByteBuffer spkiSource) throws PkiParseException
+	{
+		LittleEndianBufferReader dis = new LittleEndianBufferReader(spkiSource);
 
 		int indexCount = 0;
 		try
@@ -35,9 +47,6 @@ public class PkIndexExtractor
 		} catch(EOFException e)
 		{
 			throw new PkiParseException("Unexpected eof before all indices could be read from file", e);
-		} catch(IOException e)
-		{
-			throw new PkiParseException("IO error occured attempting to read spki file contents.", e);
 		}
 		
 		return indice;
@@ -0,0 +1,463 @@
+package io.github.jeremywildsmith.darkedenkit.dumper.pk;
+
+import io.github.jeremywildsmith.darkedenkit.ContentDigest;
+import io.github.jeremywildsmith.darkedenkit.LittleEndianDataOutputStream;
+import io.github.jeremywildsmith.darkedenkit.Nullable;
+import io.github.jeremywildsmith.darkedenkit.dumper.pk.PkIndexExtractor.PkiParseException;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//Keeps the parsed contents of spki and cfpk documents in a directory, so later runs against the same client files map the parsed
+//metadata instead of parsing the documents again.
+//
+//A cache file is used while its source has the size and modification time it was written for. If only the modification time changed,
+//as happens when the client files are copied, the source is hashed and the cache file is kept if the contents are the same. Cache
+//files that are stale or cannot be read are replaced, so deleting the directory is always safe.
+//
+//Every cache file starts with the same header, followed by the metadata as flat little endian arrays:
+//    int magic, int version, int kind, long source length, long source modification time, 64 byte hex SHA-256 of the source
+//    index:     int count, long origins[count]
+//    artifacts: int artifacts, int animations, int perspectives, int frames,
+//               int artifactAnimations[artifacts + 1], int animationPerspectives[animations + 1], int perspectiveFrames[perspectives + 1],
+//               int frameSpki[frames], int frameOriginX[frames], int frameOriginY[frames], int frameDurationFactor[frames]
+//    offsets:   int count, int offsets[count]
+//The artifacts are the arrays of an ArtifactTable, as they are held in memory. The offsets are those of CfpkExtractor.index.
+public final class PkMetadataCache
+{
+	private static final int MAGIC = 0x434D4B44; //DKMC
+	private static final int VERSION = 1;
+	private static final int KIND_INDEX = 1;
+	private static final int KIND_ARTIFACTS = 2;
+	private static final int KIND_ARTIFACT_OFFSETS = 3;
+
+	private static final Charset HASH_CHARSET = Charset.forName("US-ASCII");
+	private static final int HASH_LENGTH = 64;
+	private static final int HEADER_LENGTH = 4 + 4 + 4 + 8 + 8 + HASH_LENGTH;
+
+	private static final String INDEX_EXTENSION = "index.cache";
+	private static final String ARTIFACTS_EXTENSION = "artifacts.cache";
+	private static final String ARTIFACT_OFFSETS_EXTENSION = "offsets.cache";
+
+	private final File m_cacheDirectory;
+
+	private final AtomicInteger m_hits = new AtomicInteger();
+	private final AtomicInteger m_misses = new AtomicInteger();
+
+	public PkMetadataCache(File cacheDirectory)
+	{
+		m_cacheDirectory = cacheDirectory;
+	}
+
+	public int getHits()
+	{
+		return m_hits.get();
+	}
+
+	public int getMisses()
+	{
+		return m_misses.get();
+	}
+
+	//Sources with the same name in different directories get their own cache files.
+	private File getCacheFile(File source, String extension) throws IOException
+	{
+		String path = source.getCanonicalPath();
+
+		return new File(m_cacheDirectory, String.format("%s-%08x.%s", source.getName(), path.hashCode(), extension));
+	}
+
+	public long[] getIndex(File spkiFile) throws IOException, PkiParseException
+	{
+		File cacheFile = getCacheFile(spkiFile, INDEX_EXTENSION);
+		CacheHeader header = new CacheHeader(spkiFile);
+
+		ByteBuffer cached = openCached(cacheFile, KIND_INDEX, header);
+
+		if(cached != null)
+		{
+			long origins[] = readIndex(cached);
+
+			if(origins != null)
+			{
+				m_hits.incrementAndGet();
+
+				if(header.isRefreshed())
+					storeIndex(cacheFile, header, origins);
+
+				return origins;
+			}
+		}
+
+		m_misses.incrementAndGet();
+
+		ByteBuffer source = header.getSource();
+		long origins[] = new PkIndexExtractor().extract(source);
+		storeIndex(cacheFile, header, origins);
+
+		return origins;
+	}
+
+	public ArtifactTable getArtifacts(File cfpkFile) throws IOException
+	{
+		File cacheFile = getCacheFile(cfpkFile, ARTIFACTS_EXTENSION);
+		CacheHeader header = new CacheHeader(cfpkFile);
+
+		ByteBuffer cached = openCached(cacheFile, KIND_ARTIFACTS, header);
+
+		if(cached != null)
+		{
+			ArtifactTable artifacts = readArtifacts(cached);
+
+			if(artifacts != null)
+			{
+				m_hits.incrementAndGet();
+
+				if(header.isRefreshed())
+					storeArtifacts(cacheFile, header, artifacts);
+
+				return artifacts;
+			}
+		}
+
+		m_misses.incrementAndGet();
+
+		ArtifactTable artifacts = new CfpkExtractor().extract(header.getSource());
+		storeArtifacts(cacheFile, header, artifacts);
+
+		return artifacts;
+	}
+
+	public int[] getArtifactOffsets(File cfpkFile) throws IOException
+	{
+		File cacheFile = getCacheFile(cfpkFile, ARTIFACT_OFFSETS_EXTENSION);
+		CacheHeader header = new CacheHeader(cfpkFile);
+
+		ByteBuffer cached = openCached(cacheFile, KIND_ARTIFACT_OFFSETS, header);
+
+		if(cached != null)
+		{
+			int offsets[] = readArtifactOffsets(cached);
+
+			if(offsets != null)
+			{
+				m_hits.incrementAndGet();
+
+				if(header.isRefreshed())
+					storeArtifactOffsets(cacheFile, header, offsets);
+
+				return offsets;
+			}
+		}
+
+		m_misses.incrementAndGet();
+
+		int offsets[] = new CfpkExtractor().index(header.getSource());
+		storeArtifactOffsets(cacheFile, header, offsets);
+
+		return offsets;
+	}
+
+	//Returns the payload of the cache file, positioned after the header, or null if there is no usable cache file for the source.
+	@Nullable
+	private static ByteBuffer openCached(File cacheFile, int kind, CacheHeader header) throws IOException
+	{
+		if(!cacheFile.isFile())
+			return null;
+
+		ByteBuffer cached;
+
+		//The mapping remains valid after the channel it was created from has been closed.
+		try(RandomAccessFile file = new RandomAccessFile(cacheFile, "r");
+			FileChannel channel = file.getChannel())
+		{
+			if(channel.size() < HEADER_LENGTH || channel.size() > Integer.MAX_VALUE)
+				return null;
+
+			cached = channel.map(MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+		}
+
+		if(cached.getInt() != MAGIC || cached.getInt() != VERSION || cached.getInt() != kind)
+			return null;
+
+		long length = cached.getLong();
+		long modified = cached.getLong();
+
+		byte hash[] = new byte[HASH_LENGTH];
+		cached.get(hash);
+
+		return header.matches(length, modified, new String(hash, HASH_CHARSET)) ? cached : null;
+	}
+
+	//Returns null if the declared counts do not fit in the buffer.
+	@Nullable
+	private static long[] readIndex(ByteBuffer cached)
+	{
+		try
+		{
+			int count = cached.getInt();
+
+			if(count < 0 || count > cached.remaining() / 8)
+				return null;
+
+			long origins[] = new long[count];
+			cached.asLongBuffer().get(origins);
+
+			return origins;
+		} catch (BufferUnderflowException e)
+		{
+			return null;
+		}
+	}
+
+	@Nullable
+	private static int[] readInts(ByteBuffer cached, int count)
+	{
+		if(count < 0 || count > cached.remaining() / 4)
+			return null;
+
+		int values[] = new int[count];
+		cached.asIntBuffer().get(values);
+		cached.position(cached.position() + count * 4);
+
+		return values;
+	}
+
+	//Returns null if the offsets are missing or out of order.
+	@Nullable
+	private static int[] readArtifactOffsets(ByteBuffer cached)
+	{
+		int offsets[];
+
+		try
+		{
+			offsets = readInts(cached, cached.getInt());
+		} catch (BufferUnderflowException e)
+		{
+			return null;
+		}
+
+		if(offsets == null || offsets.length == 0 || offsets[0] < CfpkExtractor.HEADER_LENGTH)
+			return null;
+
+		for(int i = 1; i < offsets.length; i++)
+		{
+			if(offsets[i] < offsets[i - 1])
+				return null;
+		}
+
+		return offsets;
+	}
+
+	//Returns null if the payload is inconsistent.
+	@Nullable
+	private static ArtifactTable readArtifacts(ByteBuffer cached)
+	{
+		int artifactAnimations[], animationPerspectives[], perspectiveFrames[];
+		int frameSpki[], frameOriginX[], frameOriginY[], frameDurationFactor[];
+
+		try
+		{
+			int artifactCount = cached.getInt();
+			int animationCount = cached.getInt();
+			int perspectiveCount = cached.getInt();
+			int frameCount = cached.getInt();
+
+			if(artifactCount < 0 || animationCount < 0 || perspectiveCount < 0 || frameCount < 0)
+				return null;
+
+			artifactAnimations = readInts(cached, artifactCount + 1);
+			animationPerspectives = readInts(cached, animationCount + 1);
+			perspectiveFrames = readInts(cached, perspectiveCount + 1);
+			frameSpki = readInts(cached, frameCount);
+			frameOriginX = readInts(cached, frameCount);
+			frameOriginY = readInts(cached, frameCount);
+			frameDurationFactor = readInts(cached, frameCount);
+		} catch (BufferUnderflowException e)
+		{
+			return null;
+		}
+
+		if(artifactAnimations == null || animationPerspectives == null || perspectiveFrames == null ||
+			frameSpki == null || frameOriginX == null || frameOriginY == null || frameDurationFactor == null)
+			return null;
+
+		if(!ArtifactTable.isValid(artifactAnimations, animationPerspectives, perspectiveFrames, frameSpki, frameOriginX, frameOriginY, frameDurationFactor))
+			return null;
+
+		return new ArtifactTable(artifactAnimations, animationPerspectives, perspectiveFrames, frameSpki, frameOriginX, frameOriginY, frameDurationFactor);
+	}
+
+	//Written to a temporary file first, so concurrent runs and runs that are killed never leave a partially written cache file behind.
+	private void store(File cacheFile, int kind, CacheHeader header, CachePayload payload) throws IOException
+	{
+		if(!m_cacheDirectory.isDirectory() && !m_cacheDirectory.mkdirs())
+			throw new IOException(String.format("Unable to create metadata cache directory %s.", m_cacheDirectory));
+
+		File temporary = File.createTempFile(cacheFile.getName(), ".tmp", m_cacheDirectory);
+
+		try
+		{
+			try(LittleEndianDataOutputStream out = new LittleEndianDataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary))))
+			{
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(kind);
+				out.writeLong(header.getLength());
+				out.writeLong(header.getModified());
+				out.write(header.getHash().getBytes(HASH_CHARSET));
+
+				payload.write(out);
+			}
+
+			Files.move(temporary.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} finally
+		{
+			Files.deleteIfExists(temporary.toPath());
+		}
+	}
+
+	private void storeIndex(File cacheFile, CacheHeader header, final long[] origins) throws IOException
+	{
+		store(cacheFile, KIND_INDEX, header, new CachePayload() {
+			@Override
+			public void write(LittleEndianDataOutputStream out) throws IOException
+			{
+				out.writeInt(origins.length);
+
+				for(long origin : origins)
+					out.writeLong(origin);
+			}
+		});
+	}
+
+	private static void writeInts(LittleEndianDataOutputStream out, int[] values) throws IOException
+	{
+		for(int value : values)
+			out.writeInt(value);
+	}
+
+	private void storeArtifacts(File cacheFile, CacheHeader header, final ArtifactTable artifacts) throws IOException
+	{
+		store(cacheFile, KIND_ARTIFACTS, header, new CachePayload() {
+			@Override
+			public void write(LittleEndianDataOutputStream out) throws IOException
+			{
+				out.writeInt(artifacts.getArtifactCount());
+				out.writeInt(artifacts.getAnimationCount());
+				out.writeInt(artifacts.getPerspectiveCount());
+				out.writeInt(artifacts.getFrameCount());
+
+				writeInts(out, artifacts.getArtifactAnimations());
+				writeInts(out, artifacts.getAnimationPerspectives());
+				writeInts(out, artifacts.getPerspectiveFrames());
+				writeInts(out, artifacts.getFrameSpki());
+				writeInts(out, artifacts.getFrameOriginX());
+				writeInts(out, artifacts.getFrameOriginY());
+				writeInts(out, artifacts.getFrameDurationFactor());
+			}
+		});
+	}
+
+	private void storeArtifactOffsets(File cacheFile, CacheHeader header, final int[] offsets) throws IOException
+	{
+		store(cacheFile, KIND_ARTIFACT_OFFSETS, header, new CachePayload() {
+			@Override
+			public void write(LittleEndianDataOutputStream out) throws IOException
+			{
+				out.writeInt(offsets.length);
+				writeInts(out, offsets);
+			}
+		});
+	}
+
+	private interface CachePayload
+	{
+		void write(LittleEndianDataOutputStream out) throws IOException;
+	}
+
+	//Identifies the source a cache file was written for. The source is only read, and hashed, when the cheaper checks are not conclusive.
+	private static final class CacheHeader
+	{
+		private final File m_source;
+		private final long m_length;
+		private final long m_modified;
+
+		@Nullable
+		private ByteBuffer m_contents;
+		@Nullable
+		private String m_hash;
+
+		//Set if the cache file matched by hash alone and should be rewritten with the source's current modification time.
+		private boolean m_refreshed = false;
+
+		public CacheHeader(File source) throws IOException
+		{
+			if(!source.isFile())
+				throw new IOException(String.format("Metadata source %s does not exist.", source));
+
+			m_source = source;
+			m_length = source.length();
+			m_modified = source.lastModified();
+		}
+
+		public long getLength()
+		{
+			return m_length;
+		}
+
+		public long getModified()
+		{
+			return m_modified;
+		}
+
+		public ByteBuffer getSource() throws IOException
+		{
+			if(m_contents == null)
+				m_contents = ByteBuffer.wrap(Files.readAllBytes(m_source.toPath()));
+
+			return m_contents;
+		}
+
+		public String getHash() throws IOException
+		{
+			if(m_hash == null)
+				m_hash = ContentDigest.digest(getSource());
+
+			return m_hash;
+		}
+
+		public boolean isRefreshed()
+		{
+			return m_refreshed;
+		}
+
+		public boolean matches(long length, long modified, String hash) throws IOException
+		{
+			if(length != m_length)
+				return false;
+
+			if(modified == m_modified)
+			{
+				m_hash = hash;
+				return true;
+			}
+
+			m_refreshed = getHash().equals(hash);
+
+			return m_refreshed;
+		}
+	}
+}
@@ -0,0 +1,99 @@
+package io.github.jeremywildsmith.darkedenkit.dumper.pk;
+
+import io.github.jeremywildsmith.darkedenkit.LittleEndianBufferReader;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+
+//Decodes a chunk of PK copy/fill runs directly into a caller supplied buffer without creating any objects per run.
+public final class PkRunDecoder
+{
+	private static final byte[] NO_DEST = new byte[0];
+	
+	private final byte[] m_fill;
+	private final boolean[] m_copyFillPattern;
+	
+	public PkRunDecoder(byte[] fill, boolean[] copyFillPattern)
+	{
+		if(copyFillPattern.length == 0)
+			throw new IllegalArgumentException("Copy fill pattern must contain at least one element");
+		
+		if(fill.length == 0)
+			throw new IllegalArgumentException("Fill must contain at least one element");
+		
+		m_fill = fill;
+		m_copyFillPattern = copyFillPattern;
+	}
+	
+	private void fill(byte[] dest, int offset, int length)
+	{
+		if(m_fill.length == 1)
+			Arrays.fill(dest, offset, offset + length, m_fill[0]);
+		else
+		{
+			for(int i = 0; i < length; i++)
+				dest[offset + i] = m_fill[i % m_fill.length];
+		}
+	}
+	
+	//Returns the total length of the runs, including any that would not fit in destLength.
+	private int decodeRuns(LittleEndianBufferReader pkSource, int compressedLength, byte[] dest, int destOffset, int destLength) throws IOException
+	{
+		int remaining = compressedLength;
+		int written = 0;
+		int decodedLength = 0;
+		
+		try
+		{
+			for(int operationIndex = 0; remaining > 0 && pkSource.available() != 0; operationIndex++)
+			{
+				if(remaining < 2)
+					throw new EOFException();
+				
+				int operationLength = pkSource.readShort() * 2;
+				remaining -= 2;
+				
+				if(operationLength < 0)
+					throw new IOException("Unexpected operation length.");
+				
+				int stored = Math.min(operationLength, destLength - written);
+				
+				if(m_copyFillPattern[operationIndex % m_copyFillPattern.length])
+				{
+					if(operationLength > remaining)
+						throw new EOFException();
+					
+					pkSource.readFully(dest, destOffset + written, stored);
+					
+					if(pkSource.skipBytes(operationLength - stored) != operationLength - stored)
+						throw new EOFException();
+					
+					remaining -= operationLength;
+				} else
+					fill(dest, destOffset + written, stored);
+				
+				written += stored;
+				decodedLength += operationLength;
+			}
+		} catch (IOException e)
+		{
+			throw new IOException("IO error occured attempting to decompress PK chunk.", e);
+		}
+		
+		return decodedLength;
+	}
+	
+	//Consumes compressedLength bytes of runs from the source. Decoded bytes that do not fit in destLength are discarded.
+	//Returns the number of bytes written to dest.
+	public int decode(LittleEndianBufferReader pkSource, int compressedLength, byte[] dest, int destOffset, int destLength) throws IOException
+	{
+		return Math.min(decodeRuns(pkSource, compressedLength, dest, destOffset, destLength), destLength);
+	}
+	
+	//Consumes compressedLength bytes of runs from the source, like decode, but only returns how many bytes they decode to.
+	public int getDecodedLength(LittleEndianBufferReader pkSource, int compressedLength) throws IOException
+	{
+		return decodeRuns(pkSource, compressedLength, NO_DEST, 0, 0);
+	}
+}
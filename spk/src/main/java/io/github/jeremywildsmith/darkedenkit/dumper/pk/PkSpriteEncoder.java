@@ -0,0 +1,127 @@
+package io.github.jeremywildsmith.darkedenkit.dumper.pk;
+
+import io.github.jeremywildsmith.darkedenkit.LittleEndianDataOutputStream;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+//Compresses images into the copy/fill run format read by PkSpriteExtractor. Instances are stateless and may be shared between threads.
+public final class PkSpriteEncoder
+{
+	//Pixels with less alpha than this are treated as transparent and written as fill runs.
+	private static final int ALPHA_THRESHOLD = 0x80;
+	
+	//White is the colour key, so opaque white is stored as the closest colour that is not keyed.
+	private static final int COLOUR_KEY = 0xFFFF;
+	private static final int OPAQUE_WHITE = 0xFFDF;
+	
+	private final boolean[] m_copyFillPattern;
+	
+	public PkSpriteEncoder(boolean[] copyFillPattern)
+	{
+		if(copyFillPattern.length == 0)
+			throw new IllegalArgumentException("Copy fill pattern must contain at least one element");
+		
+		boolean hasCopy = false;
+		boolean hasFill = false;
+		
+		for(boolean isCopy : copyFillPattern)
+		{
+			hasCopy |= isCopy;
+			hasFill |= !isCopy;
+		}
+		
+		if(!hasCopy || !hasFill)
+			throw new IllegalArgumentException("Copy fill pattern must contain both copy and fill operations.");
+		
+		m_copyFillPattern = copyFillPattern;
+	}
+	
+	private static boolean isOpaque(int argb)
+	{
+		return (argb >>> 24) >= ALPHA_THRESHOLD;
+	}
+	
+	private static int toRgb565(int argb)
+	{
+		int rgb565 = ((argb >> 8) & 0xF800) | ((argb >> 5) & 0x07E0) | ((argb >> 3) & 0x001F);
+		
+		return rgb565 == COLOUR_KEY ? OPAQUE_WHITE : rgb565;
+	}
+	
+	private void encodeRow(int[] row, LittleEndianDataOutputStream dos, ByteArrayOutputStream rowBuffer) throws IOException
+	{
+		rowBuffer.reset();
+		LittleEndianDataOutputStream runs = new LittleEndianDataOutputStream(rowBuffer);
+		
+		//Trailing transparent pixels do not need to be encoded, the decoder pads short rows.
+		int end = row.length;
+		while(end > 0 && !isOpaque(row[end - 1]))
+			end--;
+		
+		int operations = 0;
+		
+		for(int x = 0; x < end; operations++)
+		{
+			boolean isCopy = m_copyFillPattern[operations % m_copyFillPattern.length];
+			
+			int runEnd = x;
+			while(runEnd < end && isOpaque(row[runEnd]) == isCopy)
+				runEnd++;
+			
+			runs.writeShort(runEnd - x);
+			
+			if(isCopy)
+			{
+				for(; x < runEnd; x++)
+					runs.writeShort(toRgb565(row[x]));
+			} else
+				x = runEnd;
+		}
+		
+		//Chunk length in words includes the word holding the number of copy fill pattern repetitions.
+		dos.writeShort(rowBuffer.size() / 2 + 1);
+		dos.writeShort((operations + m_copyFillPattern.length - 1) / m_copyFillPattern.length);
+		rowBuffer.writeTo(dos);
+	}
+	
+	public byte[] encode(BufferedImage image)
+	{
+		int width = image.getWidth();
+		int height = image.getHeight();
+		
+		if(width > Short.MAX_VALUE || height > Short.MAX_VALUE)
+			throw new IllegalArgumentException("Image is too large to be stored in an SPK document.");
+		
+		ByteArrayOutputStream record = new ByteArrayOutputStream();
+		LittleEndianDataOutputStream dos = new LittleEndianDataOutputStream(record);
+		
+		try
+		{
+			dos.writeShort(width);
+			dos.writeShort(height);
+			
+			int row[] = new int[width];
+			ByteArrayOutputStream rowBuffer = new ByteArrayOutputStream(width * 2 + 16);
+			
+			for(int y = 0; y < height; y++)
+			{
+				image.getRGB(0, y, width, 1, row, 0, width);
+				encodeRow(row, dos, rowBuffer);
+			}
+		} catch (IOException e)
+		{
+			//Only in memory streams are written to.
+			throw new IllegalStateException(e);
+		}
+		
+		return record.toByteArray();
+	}
+	
+	//Record of an image with no dimensions, which is decoded as the null image.
+	public byte[] encodeEmpty()
+	{
+		return new byte[4];
+	}
+}
@@ -1,200 +1,202 @@
 package io.github.jeremywildsmith.darkedenkit.dumper.pk;
 
-import io.github.jeremywildsmith.darkedenkit.IOUtils;
+import io.github.jeremywildsmith.darkedenkit.ImageUtils;
+import io.github.jeremywildsmith.darkedenkit.LittleEndianBufferReader;
 import io.github.jeremywildsmith.darkedenkit.LittleEndianDataInputStream;
-import io.github.jeremywildsmith.darkedenkit.LittleEndianDataOutputStream;
 import io.github.jeremywildsmith.darkedenkit.Nullable;
-import io.github.jeremywildsmith.darkedenkit.ReadLimitInputStream;
 
 import java.awt.Color;
 import java.awt.Graphics2D;
-import java.awt.Image;
-import java.awt.Toolkit;
 import java.awt.image.BufferedImage;
-import java.awt.image.FilteredImageSource;
-import java.awt.image.ImageFilter;
-import java.awt.image.RGBImageFilter;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
-import java.util.ArrayList;
-import java.util.List;
-
-import javax.imageio.ImageIO;
+import java.nio.ByteBuffer;
 
 public final class PkSpriteExtractor
 {
-	private static final int BITMAPFILEINFOHEADER_SIZE = 14;
-	private static final int BITMAPINFOHEADER_SIZE = 40;
-	private static final int BITMAPCOMPRESSION_BITFIELDS = 3;
-	
 	private static final byte[] SPRITE_FILL = new byte[] {-1};
 	
-	private final boolean[] m_copyFillPattern;
+	//White is the colour key used by all SPK graphics.
+	private static final int TRANSPARENT_PIXEL = 0;
+	
+	//Maps every RGB565 pixel to its ARGB equivalent, with the colour key already applied.
+	private static final int[] RGB565_TO_ARGB = createRgb565Lookup();
+	
+	private static final int NULL_IMAGE_WIDTH = 200;
+	private static final int NULL_IMAGE_HEIGHT = 60;
+	private static final String NULL_IMAGE_TEXT = "NULL IMAGE";
+	
+	private final PkRunDecoder m_runDecoder;
 	
 	public PkSpriteExtractor(boolean[] copyFillPattern)
 	{
-		m_copyFillPattern = copyFillPattern;
+		m_runDecoder = new PkRunDecoder(SPRITE_FILL, copyFillPattern);
 	}
 	
-	private void writeSpkBitmapHeader(OutputStream os, int imageWidth, int imageHeight) throws IOException
+	private static int scaleComponent(int component, int maxComponent)
 	{
-		//Since the stream is provided by the caller, it is the caller's responsibility to close it.
-		@SuppressWarnings("resource")
-		LittleEndianDataOutputStream dos = new LittleEndianDataOutputStream(os);
-		
-		int evenImageWidth = imageWidth % 2 == 0 ? imageWidth : imageWidth + 1;
-		
-		//BITMAPFILEHEADER
-		//Bitmap header signature
-		dos.writeByte('B');
-		dos.writeByte('M');
-		
-		//Bitmap file size (DWORD)
-		dos.writeInt(BITMAPFILEINFOHEADER_SIZE + BITMAPINFOHEADER_SIZE + imageHeight * (evenImageWidth * 2));
-		
-		//Two reserved words (must be zero)
-		dos.writeShort(0);
-		dos.writeShort(0);
-		
-		//Offset from origin of file where pixel data starts. Since our header size never changes, this is constant.
-		dos.writeInt(70);
-		
-		//BITMAPINFOHEADER
-		//Write size of header.
-		dos.writeInt(BITMAPINFOHEADER_SIZE);
-		
-		//Image width
-		dos.writeInt(imageWidth);
-		
-		//Since all SPK compressed images are stored top-down, we must negate the height
-		dos.writeInt(-imageHeight);
-		
-		//All bitmaps always have one plane
-		dos.writeShort(1);
-		
-		//All SPK images are 16 bit
-		dos.writeShort(16);
-		
-		//All SPK images are decompressed into compressed BI_BITFIELD bitmaps
-		dos.writeInt(BITMAPCOMPRESSION_BITFIELDS);
-		
-		//Size of image data, in bytes.
-		dos.writeInt(evenImageWidth * imageHeight * 2);
-
-		//pixels per meter is constant throughout all SPK graphics in both x & y.
-		dos.writeInt(2834);
-		dos.writeInt(2834);
-		
-		//ClrUsed, Field not relevant to BI_BITFIELDS compressed bitmaps.
-		dos.writeInt(0);
-				
-		//ClrImportant, Field not relevant to BI_BITFIELDS compressed bitmaps.
-		dos.writeInt(0);
-		
-		//Write color bitmasks. These are constant throughout all SPK graphics.
-		dos.writeInt(0xF800);
-		dos.writeInt(0x07E0);
-		dos.writeInt(0x1F);
-		dos.writeInt(0);
+		//Same rounding as the DirectColorModel used when these images were decoded as BI_BITFIELDS bitmaps.
+		return (int)(component * (255.0F / maxComponent) + 0.5F);
 	}
 	
-	//Since the caller provided the streams, it is their responsibility to close them.
-	@SuppressWarnings("resource")
-	private boolean decompressImage(InputStream compressedImageIn, OutputStream bitmapOut) throws IOException
+	private static int[] createRgb565Lookup()
 	{
-		LittleEndianDataInputStream dis = new LittleEndianDataInputStream(compressedImageIn);
-		LittleEndianDataOutputStream dos = new LittleEndianDataOutputStream(bitmapOut);
-		
-		int imageWidth = dis.readShort();
-		int imageHeight = dis.readShort();
-		
-		if(imageWidth <= 0 || imageHeight <= 0)
-			return false;
-		
-		int evenImageWidth = (imageWidth % 2) == 0 ? imageWidth : imageWidth + 1;
-		
-		List<byte[]> decompressedWidthChunks = new ArrayList<>();
+		int lookup[] = new int[0x10000];
 		
-		for(int y = 0; y < imageHeight; y++)
+		for(int i = 0; i < lookup.length; i++)
 		{
-			int sizeOfChunkInWords = dis.readShort() - 1; //Minus 1 for unknown short that starts every chunk
-			dis.skipBytes(2); //unknown short;
+			int rgb = (scaleComponent((i >> 11) & 0x1F, 0x1F) << 16) |
+						(scaleComponent((i >> 5) & 0x3F, 0x3F) << 8) |
+						scaleComponent(i & 0x1F, 0x1F);
 			
-			ByteArrayOutputStream chunckDecompressionBuffer = new ByteArrayOutputStream(evenImageWidth * 2);
-		
-			IOUtils.copy(new PkCompressedStream(SPRITE_FILL, m_copyFillPattern, new ReadLimitInputStream(dis, sizeOfChunkInWords * 2)), 
-							chunckDecompressionBuffer);
-		
-			decompressedWidthChunks.add(chunckDecompressionBuffer.toByteArray());
-		}
-
-		writeSpkBitmapHeader(dos, imageWidth, imageHeight);
-		
-		for(byte[] widthBitmapData : decompressedWidthChunks)
-		{
-			dos.write(widthBitmapData);	
-			for(int i = widthBitmapData.length; i < evenImageWidth * 2; i++)
-				dos.write(new byte[] {-1});
+			lookup[i] = rgb == 0x00FFFFFF ? TRANSPARENT_PIXEL : 0xFF000000 | rgb;
 		}
 		
-		return true;
+		return lookup;
 	}
 	
 	@Nullable
-	private Image decompressImage(InputStream compressedImageIn) throws IOException
+	private BufferedImage decompressImage(RecordSource source) throws IOException
 	{
+		int imageWidth = source.readShort();
+		int imageHeight = source.readShort();
+		
+		if(imageWidth <= 0 || imageHeight <= 0)
+			return null;
+		
+		BufferedImage image = new BufferedImage(imageWidth, imageHeight, BufferedImage.TYPE_INT_ARGB);
+		int raster[] = ImageUtils.getArgbData(image);
+		byte rowBuffer[] = new byte[imageWidth * 2];
+		
 		try
 		{
-			ByteArrayOutputStream bitmapBuffer = new ByteArrayOutputStream();
-			
-			if(!decompressImage(compressedImageIn, bitmapBuffer))
-				return null;
+			for(int y = 0; y < imageHeight; y++)
+			{
+				int sizeOfChunkInBytes = Math.max(0, (source.readShort() - 1) * 2); //Minus 1 for unknown short that starts every chunk
+				source.readShort(); //unknown short;
 				
-			return ImageIO.read(new ByteArrayInputStream(bitmapBuffer.toByteArray()));
+				//Anything decompressed beyond the width of the image is discarded.
+				int rowPixels = m_runDecoder.decode(source.readChunk(sizeOfChunkInBytes), sizeOfChunkInBytes, rowBuffer, 0, rowBuffer.length) / 2;
+				int rowOffset = y * imageWidth;
+				
+				//Rows that end early are left padded with the transparent pixels the raster was created with.
+				for(int x = 0; x < rowPixels; x++)
+					raster[rowOffset + x] = RGB565_TO_ARGB[(rowBuffer[x * 2] & 0xFF) | ((rowBuffer[x * 2 + 1] & 0xFF) << 8)];
+			}
 		} catch (IOException e)
 		{
 			throw new IOException("Error occured generating image from compressed SPK graphic.", e);
 		}
-	}
-
-	private BufferedImage filterWhiteToTransparent(Image img)
-	{		
-		ImageFilter filter = new RGBImageFilter() {
-			@Override
-			public int filterRGB(int x, int y, int rgb)
-			{
-				return (rgb & 0x00FFFFFF) == 0x00FFFFFF ? 0x00FFFFFF : rgb;
-			}
-		};
 		
-		Image transparentImage = Toolkit.getDefaultToolkit().createImage(new FilteredImageSource(img.getSource(), filter));
-
-		BufferedImage canvas = new BufferedImage(img.getWidth(null), img.getHeight(null), BufferedImage.TYPE_INT_ARGB);
-		Graphics2D g = (Graphics2D)canvas.getGraphics();
-		g.drawImage(transparentImage, 0, 0, null);
-		g.dispose();
-
-		return canvas;
+		return image;
 	}
 	
-	private BufferedImage generateNullImage()
+	private static int[] renderNullImage()
 	{
-		BufferedImage img = new BufferedImage(200, 60, BufferedImage.TYPE_INT_ARGB);
+		BufferedImage img = new BufferedImage(NULL_IMAGE_WIDTH, NULL_IMAGE_HEIGHT, BufferedImage.TYPE_INT_ARGB);
 		Graphics2D g2d = (Graphics2D)img.getGraphics();
 		g2d.setColor(Color.red);
-		g2d.drawString("NULL IMAGE", 10, 10);
+		g2d.drawString(NULL_IMAGE_TEXT, 10, 10);
 		g2d.dispose();
+		
+		return ImageUtils.getArgbData(img).clone();
+	}
+	
+	//Every placeholder is a copy of the same pixels, so callers are free to modify the image they are given.
+	private BufferedImage generateNullImage()
+	{
+		BufferedImage img = new BufferedImage(NULL_IMAGE_WIDTH, NULL_IMAGE_HEIGHT, BufferedImage.TYPE_INT_ARGB);
+		int pixels[] = NullImage.PIXELS;
+		System.arraycopy(pixels, 0, ImageUtils.getArgbData(img), 0, pixels.length);
+		
 		return img;
 	}
 	
+	//Fonts are only loaded the first time a placeholder is needed, which keeps them out of the decode path of valid sprites.
+	private static final class NullImage
+	{
+		private static final int[] PIXELS = renderNullImage();
+	}
+	
+	//Only the record is read from the stream, one row at a time, leaving the stream at whatever follows it. The stream is not closed.
 	@Nullable
 	public BufferedImage extract(InputStream pkSource) throws IOException
 	{
-		Image extractedImage = decompressImage(pkSource);
-		BufferedImage imgBuffer = extractedImage == null ? generateNullImage() : filterWhiteToTransparent(extractedImage);
-		return imgBuffer;
+		BufferedImage extractedImage = decompressImage(new StreamRecordSource(pkSource));
+		return extractedImage == null ? generateNullImage() : extractedImage;
+	}
+	
+	//Decodes the record at the buffer's position. The buffer's position is left unchanged.
+	@Nullable
+	public BufferedImage extract(ByteBuffer pkRecord) throws IOException
+	{
+		BufferedImage extractedImage = decompressImage(new BufferRecordSource(pkRecord));
+		return extractedImage == null ? generateNullImage() : extractedImage;
+	}
+	
+	//Where decompressImage reads a record from, so that the header and row layout are only parsed in one place.
+	private interface RecordSource
+	{
+		short readShort() throws IOException;
+		
+		//Returns a reader positioned at the next length bytes of the record, which the caller consumes.
+		LittleEndianBufferReader readChunk(int length) throws IOException;
+	}
+	
+	//Row chunks are decoded straight out of the record.
+	private static final class BufferRecordSource implements RecordSource
+	{
+		private final LittleEndianBufferReader m_record;
+		
+		public BufferRecordSource(ByteBuffer record)
+		{
+			m_record = new LittleEndianBufferReader(record);
+		}
+		
+		@Override
+		public short readShort() throws IOException
+		{
+			return m_record.readShort();
+		}
+		
+		@Override
+		public LittleEndianBufferReader readChunk(int length)
+		{
+			return m_record;
+		}
+	}
+	
+	//Each row chunk is read into one reused array and decoded from there through the same reader.
+	private static final class StreamRecordSource implements RecordSource
+	{
+		private final LittleEndianDataInputStream m_record;
+		private byte m_chunk[] = new byte[0];
+		private LittleEndianBufferReader m_chunkReader = new LittleEndianBufferReader(m_chunk);
+		
+		public StreamRecordSource(InputStream record)
+		{
+			m_record = new LittleEndianDataInputStream(record);
+		}
+		
+		@Override
+		public short readShort() throws IOException
+		{
+			return m_record.readShort();
+		}
+		
+		@Override
+		public LittleEndianBufferReader readChunk(int length) throws IOException
+		{
+			if(m_chunk.length < length)
+			{
+				m_chunk = new byte[length];
+				m_chunkReader = new LittleEndianBufferReader(m_chunk);
+			}
+			
+			m_record.readFully(m_chunk, 0, length);
+			m_chunkReader.setRange(0, length);
+			
+			return m_chunkReader;
+		}
 	}
 }
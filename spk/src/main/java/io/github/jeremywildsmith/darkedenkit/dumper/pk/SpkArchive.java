@@ -0,0 +1,134 @@
+package io.github.jeremywildsmith.darkedenkit.dumper.pk;
+
+import io.github.jeremywildsmith.darkedenkit.Nullable;
+import io.github.jeremywildsmith.darkedenkit.dumper.pk.PkIndexExtractor.PkiParseException;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+
+//Random access to the sprites of an spk/spki pair. All methods may be called concurrently from any number of threads.
+public final class SpkArchive implements Closeable
+{
+	private final MappedSpkFile m_spk;
+	private final long[] m_origins;
+	private final PkSpriteExtractor m_extractor;
+	
+	private volatile boolean m_closed = false;
+	
+	private SpkArchive(MappedSpkFile spk, long[] origins, boolean[] copyFillPattern)
+	{
+		m_spk = spk;
+		m_origins = origins;
+		m_extractor = new PkSpriteExtractor(copyFillPattern);
+	}
+	
+	public static SpkArchive open(File spkFile, File spkiFile, boolean[] copyFillPattern) throws IOException, PkiParseException
+	{
+		return open(spkFile, spkiFile, copyFillPattern, null);
+	}
+	
+	//If a metadata cache is given, the spki is only parsed when the cache does not already hold its index.
+	public static SpkArchive open(File spkFile, File spkiFile, boolean[] copyFillPattern, @Nullable PkMetadataCache metadataCache) throws IOException, PkiParseException
+	{
+		long origins[];
+		
+		if(metadataCache == null)
+			origins = new PkIndexExtractor().extract(ByteBuffer.wrap(Files.readAllBytes(spkiFile.toPath())));
+		else
+			origins = metadataCache.getIndex(spkiFile);
+		
+		return new SpkArchive(new MappedSpkFile(spkFile), origins, copyFillPattern);
+	}
+	
+	private void checkOpen() throws IOException
+	{
+		if(m_closed)
+			throw new IOException("SPK archive has been closed.");
+	}
+	
+	public int size()
+	{
+		return m_origins.length;
+	}
+	
+	public long getOrigin(int index)
+	{
+		return m_origins[index];
+	}
+	
+	//The returned buffer starts at the sprite's record and is independent of any other buffer handed out by this archive.
+	public ByteBuffer getRecord(int index) throws IOException
+	{
+		checkOpen();
+		
+		return m_spk.slice(m_origins[index]);
+	}
+	
+	public Dimension getDimensions(int index) throws IOException
+	{
+		ByteBuffer record = getRecord(index).order(ByteOrder.LITTLE_ENDIAN);
+		
+		if(record.remaining() < 4)
+			throw new IOException(String.format("Record for sprite %d is truncated.", index));
+		
+		int width = record.getShort();
+		int height = record.getShort();
+		
+		return width <= 0 || height <= 0 ? new Dimension() : new Dimension(width, height);
+	}
+	
+	//Walks the row headers of the record to find where it ends. Records that describe an empty sprite are only their dimensions.
+	public int getRecordLength(int index) throws IOException
+	{
+		ByteBuffer record = getRecord(index).order(ByteOrder.LITTLE_ENDIAN);
+
+		try
+		{
+			int width = record.getShort();
+			int height = record.getShort();
+
+			if(width > 0 && height > 0)
+			{
+				for(int y = 0; y < height; y++)
+				{
+					int sizeOfChunkInWords = record.getShort() - 1; //Minus 1 for unknown short that starts every chunk
+					record.position(record.position() + 2 + Math.max(0, sizeOfChunkInWords) * 2);
+				}
+			}
+		} catch (BufferUnderflowException | IllegalArgumentException e)
+		{
+			throw new IOException(String.format("Record for sprite %d is truncated.", index), e);
+		}
+
+		return record.position();
+	}
+
+	//The returned buffer holds exactly the bytes of the sprite's record.
+	public ByteBuffer getRecordBytes(int index) throws IOException
+	{
+		ByteBuffer record = getRecord(index);
+		record.limit(getRecordLength(index));
+
+		return record;
+	}
+
+	@Nullable
+	public BufferedImage decode(int index) throws IOException
+	{
+		return m_extractor.extract(getRecord(index));
+	}
+	
+	//The mapping itself is released once it is no longer reachable, so closing only prevents further reads.
+	@Override
+	public void close()
+	{
+		m_closed = true;
+	}
+}
@@ -0,0 +1,94 @@
+package io.github.jeremywildsmith.darkedenkit.dumper.pk;
+
+import io.github.jeremywildsmith.darkedenkit.Nullable;
+import io.github.jeremywildsmith.darkedenkit.WeightedCache;
+import io.github.jeremywildsmith.darkedenkit.WeightedCache.Weigher;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+//Caches sprites decoded from an SpkArchive by their spki index. Cached images are shared, callers must not modify them.
+public final class SpkSpriteCache
+{
+	private static final Weigher<BufferedImage> ARGB_IMAGE_WEIGHER = new Weigher<BufferedImage>() {
+		@Override
+		public long weigh(BufferedImage value)
+		{
+			return 4L * value.getWidth() * value.getHeight();
+		}
+	};
+	
+	private final SpkArchive m_archive;
+	private final WeightedCache<Integer, BufferedImage> m_cache;
+	
+	public SpkSpriteCache(SpkArchive archive, long budgetBytes)
+	{
+		m_archive = archive;
+		m_cache = new WeightedCache<>(budgetBytes, ARGB_IMAGE_WEIGHER);
+	}
+	
+	@Nullable
+	public BufferedImage get(final int index) throws IOException
+	{
+		try
+		{
+			return m_cache.get(index, new Callable<BufferedImage>() {
+				@Override
+				public BufferedImage call() throws IOException
+				{
+					return m_archive.decode(index);
+				}
+			});
+		} catch (ExecutionException e)
+		{
+			Throwable cause = e.getCause();
+			
+			if(cause instanceof IOException)
+				throw (IOException)cause;
+			else if(cause instanceof RuntimeException)
+				throw (RuntimeException)cause;
+			else if(cause instanceof Error)
+				throw (Error)cause;
+			
+			throw new IOException("Error occured decoding cached sprite.", cause);
+		} catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for sprite to be decoded.");
+		}
+	}
+	
+	//Where the sprite's record starts in the spk, which lets callers decode several sprites in the order they are stored.
+	public long getOrigin(int index)
+	{
+		return m_archive.getOrigin(index);
+	}
+	
+	public long getHits()
+	{
+		return m_cache.getHits();
+	}
+	
+	public long getMisses()
+	{
+		return m_cache.getMisses();
+	}
+	
+	public long getEvictions()
+	{
+		return m_cache.getEvictions();
+	}
+	
+	public long getWeight()
+	{
+		return m_cache.getWeight();
+	}
+	
+	public long getBudget()
+	{
+		return m_cache.getBudget();
+	}
+}
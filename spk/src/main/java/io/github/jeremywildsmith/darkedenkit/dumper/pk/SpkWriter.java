@@ -0,0 +1,44 @@
+package io.github.jeremywildsmith.darkedenkit.dumper.pk;
+
+import io.github.jeremywildsmith.darkedenkit.LittleEndianDataOutputStream;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+//Assembles encoded sprite records into an spk document and writes the matching spki offset table.
+public final class SpkWriter
+{
+	public static final int MAX_RECORDS = 0xFFFF;
+	
+	//Both documents start with the number of records they hold.
+	private static final int HEADER_SIZE = 2;
+	
+	public void write(List<byte[]> records, File spkDestination, File spkiDestination) throws IOException
+	{
+		if(records.size() > MAX_RECORDS)
+			throw new IOException(String.format("SPK documents can hold at most %d records, %d were supplied.", MAX_RECORDS, records.size()));
+		
+		long origin = HEADER_SIZE;
+		
+		try(LittleEndianDataOutputStream spk = new LittleEndianDataOutputStream(new BufferedOutputStream(new FileOutputStream(spkDestination)));
+			LittleEndianDataOutputStream spki = new LittleEndianDataOutputStream(new BufferedOutputStream(new FileOutputStream(spkiDestination))))
+		{
+			spk.writeShort(records.size());
+			spki.writeShort(records.size());
+			
+			for(byte[] record : records)
+			{
+				if(origin > 0xFFFFFFFFL)
+					throw new IOException("SPK document exceeds the maximum size addressable by an spki offset table.");
+				
+				spki.writeInt((int)origin);
+				spk.write(record, 0, record.length);
+				
+				origin += record.length;
+			}
+		}
+	}
+}
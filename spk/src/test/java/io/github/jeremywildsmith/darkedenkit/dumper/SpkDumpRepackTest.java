@@ -0,0 +1,100 @@
+package io.github.jeremywildsmith.darkedenkit.dumper;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import io.github.jeremywildsmith.darkedenkit.PngEncoder;
+import io.github.jeremywildsmith.darkedenkit.dumper.SpkDumper.DeduplicationMode;
+import io.github.jeremywildsmith.darkedenkit.dumper.pk.PkSpriteEncoder;
+import io.github.jeremywildsmith.darkedenkit.dumper.pk.SpkWriter;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+//Dumps an spk with SpkDumper and packs the dump again with SpkRepacker, which has to reproduce the original records.
+public final class SpkDumpRepackTest
+{
+	private static final boolean[] SPK_PATTERN = {false, true};
+
+	@Rule
+	public final TemporaryFolder m_folder = new TemporaryFolder();
+
+	//Only colours that survive RGB565 unchanged are used, and white is avoided since it is the colour key.
+	private static BufferedImage createImage(int width, int height, int seed)
+	{
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+
+		for(int y = 0; y < height; y++)
+		{
+			for(int x = 0; x < width; x++)
+			{
+				if((x + y + seed) % 3 != 0)
+					image.setRGB(x, y, 0xFF000000 | ((x * 8) & 0xF8) << 16 | ((y * 4 + seed * 4) & 0xFC) << 8 | ((seed * 8) & 0xF8));
+			}
+		}
+
+		return image;
+	}
+
+	private void assertDumpRepacks(DeduplicationMode mode) throws Exception
+	{
+		PkSpriteEncoder encoder = new PkSpriteEncoder(SPK_PATTERN);
+		List<byte[]> records = new ArrayList<>();
+
+		//Empty records in the middle and at the end, which are not written as images.
+		records.add(encoder.encode(createImage(12, 7, 1)));
+		records.add(encoder.encodeEmpty());
+		records.add(encoder.encode(createImage(5, 9, 2)));
+		records.add(encoder.encodeEmpty());
+
+		File spk = m_folder.newFile("source.spk");
+		File spki = m_folder.newFile("source.spki");
+		new SpkWriter().write(records, spk, spki);
+
+		File dump = m_folder.newFolder("dump");
+		assertTrue(new SpkDumper(spk, spki, dump.toURI(), SPK_PATTERN, 2, new PngEncoder(), mode, false).execute());
+
+		File repackedSpk = new File(m_folder.getRoot(), "repacked.spk");
+		File repackedSpki = new File(m_folder.getRoot(), "repacked.spki");
+		new SpkRepacker(dump, repackedSpk, repackedSpki, SPK_PATTERN, 2).run();
+
+		assertArrayEquals(Files.readAllBytes(spk.toPath()), Files.readAllBytes(repackedSpk.toPath()));
+		assertArrayEquals(Files.readAllBytes(spki.toPath()), Files.readAllBytes(repackedSpki.toPath()));
+	}
+
+	@Test
+	public void emptyRecordsAreNotWrittenAsImages() throws Exception
+	{
+		File spk = m_folder.newFile("empty.spk");
+		File spki = m_folder.newFile("empty.spki");
+		List<byte[]> records = new ArrayList<>();
+		records.add(new PkSpriteEncoder(SPK_PATTERN).encodeEmpty());
+		new SpkWriter().write(records, spk, spki);
+
+		File dump = m_folder.newFolder("dump");
+		assertTrue(new SpkDumper(spk, spki, dump.toURI(), SPK_PATTERN, 1, new PngEncoder(), DeduplicationMode.RECORD, false).execute());
+
+		for(File f : dump.listFiles())
+			assertFalse(f.getName(), f.getName().endsWith(".png"));
+	}
+
+	@Test
+	public void recordDedupeDumpRepacks() throws Exception
+	{
+		assertDumpRepacks(DeduplicationMode.RECORD);
+	}
+
+	@Test
+	public void pixelDedupeDumpRepacks() throws Exception
+	{
+		assertDumpRepacks(DeduplicationMode.PIXELS);
+	}
+}
@@ -0,0 +1,130 @@
+package io.github.jeremywildsmith.darkedenkit.dumper.pk;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+//Encodes images, writes them into an spk/spki pair and checks that SpkArchive decodes them back to the same pixels.
+public final class SpkRoundTripTest
+{
+	private static final boolean[] SPK_PATTERN = {false, true};
+	private static final boolean[] ISPK_PATTERN = {false, true, true};
+
+	@Rule
+	public final TemporaryFolder m_folder = new TemporaryFolder();
+
+	//Same scaling the extractor applies to RGB565 components.
+	private static int scaleComponent(int component, int maxComponent)
+	{
+		return (int)(component * (255.0F / maxComponent) + 0.5F);
+	}
+
+	//Only colours that survive RGB565 unchanged are used, and white is avoided since it is the colour key.
+	private static BufferedImage createImage(Random random, int width, int height)
+	{
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+
+		for(int y = 0; y < height; y++)
+		{
+			for(int x = 0; x < width; x++)
+			{
+				if(random.nextInt(3) == 0)
+					continue;
+
+				int r = random.nextInt(0x1F);
+				int g = random.nextInt(0x40);
+				int b = random.nextInt(0x20);
+
+				image.setRGB(x, y, 0xFF000000 | scaleComponent(r, 0x1F) << 16 | scaleComponent(g, 0x3F) << 8 | scaleComponent(b, 0x1F));
+			}
+		}
+
+		return image;
+	}
+
+	private static void assertSameImage(String sprite, BufferedImage expected, BufferedImage decoded)
+	{
+		assertEquals(expected.getWidth(), decoded.getWidth());
+		assertEquals(expected.getHeight(), decoded.getHeight());
+
+		for(int y = 0; y < expected.getHeight(); y++)
+		{
+			for(int x = 0; x < expected.getWidth(); x++)
+				assertEquals(String.format("Pixel %d, %d of %s", x, y, sprite), expected.getRGB(x, y), decoded.getRGB(x, y));
+		}
+	}
+
+	private void assertRoundTrip(boolean[] copyFillPattern) throws Exception
+	{
+		Random random = new Random(42);
+		PkSpriteEncoder encoder = new PkSpriteEncoder(copyFillPattern);
+		List<BufferedImage> images = new ArrayList<>();
+		List<byte[]> records = new ArrayList<>();
+
+		for(int i = 0; i < 16; i++)
+		{
+			BufferedImage image = createImage(random, 1 + random.nextInt(80), 1 + random.nextInt(40));
+			images.add(image);
+			records.add(encoder.encode(image));
+		}
+
+		File spk = m_folder.newFile("test.spk");
+		File spki = m_folder.newFile("test.spki");
+		new SpkWriter().write(records, spk, spki);
+
+		try(SpkArchive archive = SpkArchive.open(spk, spki, copyFillPattern))
+		{
+			assertEquals(images.size(), archive.size());
+
+			for(int i = 0; i < images.size(); i++)
+				assertSameImage(String.format("sprite %d", i), images.get(i), archive.decode(i));
+		}
+	}
+
+	//Records are read back to back from a single stream, so each extraction has to stop at the end of its own record.
+	@Test
+	public void streamedRecordsDecodeInSequence() throws Exception
+	{
+		Random random = new Random(7);
+		PkSpriteEncoder encoder = new PkSpriteEncoder(SPK_PATTERN);
+		PkSpriteExtractor extractor = new PkSpriteExtractor(SPK_PATTERN);
+		List<BufferedImage> images = new ArrayList<>();
+		ByteArrayOutputStream records = new ByteArrayOutputStream();
+
+		for(int i = 0; i < 16; i++)
+		{
+			BufferedImage image = createImage(random, 1 + random.nextInt(80), 1 + random.nextInt(40));
+			images.add(image);
+			records.write(encoder.encode(image));
+		}
+
+		ByteArrayInputStream source = new ByteArrayInputStream(records.toByteArray());
+
+		for(int i = 0; i < images.size(); i++)
+			assertSameImage(String.format("streamed sprite %d", i), images.get(i), extractor.extract(source));
+
+		assertEquals(0, source.available());
+	}
+
+	@Test
+	public void spkPatternRoundTrips() throws Exception
+	{
+		assertRoundTrip(SPK_PATTERN);
+	}
+
+	@Test
+	public void ispkPatternRoundTrips() throws Exception
+	{
+		assertRoundTrip(ISPK_PATTERN);
+	}
+}